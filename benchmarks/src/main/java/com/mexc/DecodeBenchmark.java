@@ -0,0 +1,127 @@
+package com.mexc;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.CharsetUtil;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Per-frame decode cost of each client's receive path: the streaming
+ * {@link DealsDecoder} and {@link ProtobufDealsDecoder} against the
+ * tree/object parsing the clients used to do.
+ * Run with {@code -prof gc} to see allocation per frame.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DecodeBenchmark {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private ByteBuf[] byteBufs;
+    private ByteBuf[] protobufBufs;
+    private String[] strings;
+    private Buffer[] buffers;
+    private int mask;
+    private int next;
+
+    private DealsDecoder decoder;
+    private ProtobufDealsDecoder protobufDecoder;
+    private TradeHandler sink;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        RecordedFrames recorded = RecordedFrames.load();
+        int size = Integer.highestOneBit(recorded.size());
+        mask = size - 1;
+        byteBufs = new ByteBuf[size];
+        strings = new String[size];
+        buffers = new Buffer[size];
+        protobufBufs = new ByteBuf[size];
+        SymbolRegistry registry = new SymbolRegistry(recorded.symbols);
+        decoder = new DealsDecoder(registry);
+        protobufDecoder = new ProtobufDealsDecoder(registry);
+        ProtobufDealsEncoder encoder = new ProtobufDealsEncoder();
+        for (int i = 0; i < size; i++) {
+            String frame = recorded.frames.get(i);
+            strings[i] = frame;
+            byteBufs[i] = PooledByteBufAllocator.DEFAULT.directBuffer().writeBytes(frame.getBytes(CharsetUtil.UTF_8));
+            buffers[i] = Buffer.buffer(frame);
+            // The same deals, transcoded to the protobuf channel's binary frame.
+            encoder.reset();
+            decoder.decode(frame, trade -> encoder.deal(BigDecimal.valueOf(trade.price).toPlainString(),
+                    BigDecimal.valueOf(trade.quantity).toPlainString(), trade.side, trade.timestamp));
+            String symbol = recorded.frameSymbols.get(i);
+            protobufBufs[i] = PooledByteBufAllocator.DEFAULT.directBuffer();
+            encoder.writeFrame(protobufBufs[i], DealsFormat.PROTOBUF.channelPrefix() + symbol, symbol, 0);
+        }
+        sink = trade -> blackhole.consume(trade.price);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (int i = 0; i < byteBufs.length; i++) {
+            byteBufs[i].release();
+            protobufBufs[i].release();
+        }
+    }
+
+    /** Netty and Vert.x path: decode straight from the frame's ByteBuf. */
+    @Benchmark
+    public int dealsDecoderByteBuf() {
+        return decoder.decode(byteBufs[next++ & mask], sink);
+    }
+
+    /** Protobuf channel: walk the binary frame's ByteBuf. */
+    @Benchmark
+    public int protobufDecoderByteBuf() {
+        return protobufDecoder.decode(protobufBufs[next++ & mask], sink);
+    }
+
+    /** java.net.http path: decode from the listener's CharSequence. */
+    @Benchmark
+    public int dealsDecoderCharSequence() {
+        return decoder.decode(strings[next++ & mask], sink);
+    }
+
+    /** Former MexcWebSocketClient.onText: readTree(data.toString()). */
+    @Benchmark
+    public Object jacksonTree() throws Exception {
+        return OBJECT_MAPPER.readTree(strings[next++ & mask]);
+    }
+
+    /** Former NettyWebSocketClient handler: msg.text() then readValue(message, Object.class). */
+    @Benchmark
+    public Object jacksonObjectFromByteBuf() throws Exception {
+        String text = byteBufs[next++ & mask].toString(CharsetUtil.UTF_8);
+        return OBJECT_MAPPER.readValue(text, Object.class);
+    }
+
+    /** Former WebSocketClientVerticle handler: new JsonObject(message.toString()). */
+    @Benchmark
+    public Object vertxJsonObject() {
+        return new JsonObject(buffers[next++ & mask].toString());
+    }
+}
@@ -0,0 +1,48 @@
+package com.mexc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Downstream stage for the benchmarks: counts dispatched trades and records
+ * how long each spent between its frame being received and being dispatched
+ * by the trade ring's consumer.
+ */
+final class DispatchRecorder implements TradeHandler {
+
+    private final AtomicLong dispatched = new AtomicLong();
+    private final Histogram receiveToDispatch = new Histogram(TimeUnit.SECONDS.toNanos(10), 3);
+
+    @Override
+    public void onTrade(Trade trade) {
+        receiveToDispatch.recordValue(Math.max(0, System.nanoTime() - trade.receivedNanos));
+        dispatched.lazySet(dispatched.get() + 1);
+    }
+
+    long dispatched() {
+        return dispatched.get();
+    }
+
+    /** Spins until {@code target} trades have been dispatched. */
+    void awaitDispatched(long target) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (dispatched.get() < target) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Timed out at " + dispatched.get() + " of " + target + " trades");
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /** Call only once the consumer thread has stopped. */
+    String summary() {
+        return String.format("receive-to-dispatch (us): p50=%.1f p99=%.1f p99.9=%.1f max=%.1f n=%d",
+                receiveToDispatch.getValueAtPercentile(50) / 1000.0,
+                receiveToDispatch.getValueAtPercentile(99) / 1000.0,
+                receiveToDispatch.getValueAtPercentile(99.9) / 1000.0,
+                receiveToDispatch.getMaxValue() / 1000.0,
+                receiveToDispatch.getTotalCount());
+    }
+}
@@ -0,0 +1,62 @@
+package com.mexc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Tail latency of the receive path under the current {@link ThreadAffinity}
+ * mode. Recorded frames are replayed one at a time from the loopback server,
+ * with a pause between them so every frame finds the pipeline idle, and the
+ * server-write-to-dispatch time of each is recorded. Run it once per mode and
+ * compare the tails:
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.mexc.JitterReport netty
+ * java -Dlatency.mode=low -Daffinity.io=2 -Daffinity.consumer=3 -cp benchmarks/target/benchmarks.jar com.mexc.JitterReport netty
+ * </pre>
+ *
+ * {@code -Djitter.frames} (default 20000), {@code -Djitter.warmup} (5000) and
+ * {@code -Djitter.gap.us} (200) tune the run.
+ */
+public final class JitterReport {
+
+    private JitterReport() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int frames = Integer.getInteger("jitter.frames", 20_000);
+        int warmup = Integer.getInteger("jitter.warmup", 5_000);
+        long gapNanos = TimeUnit.MICROSECONDS.toNanos(Long.getLong("jitter.gap.us", 200));
+        String client = args.length > 0 ? args[0] : "netty";
+
+        ReceivePathBenchmark bench = new ReceivePathBenchmark();
+        bench.client = client;
+        bench.setUp();
+        Histogram writeToDispatch = new Histogram(TimeUnit.SECONDS.toNanos(10), 3);
+        try {
+            for (int i = 0; i < warmup + frames; i++) {
+                long start = System.nanoTime();
+                bench.singleFrame();
+                if (i >= warmup) {
+                    writeToDispatch.recordValue(System.nanoTime() - start);
+                }
+                LockSupport.parkNanos(gapNanos);
+            }
+        } finally {
+            bench.tearDown();
+        }
+        System.out.println(client + ", " + ThreadAffinity.fromSystemProperties() + ", " + frames + " frames");
+        System.out.printf("write-to-dispatch (us): p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f p99.99=%.1f max=%.1f"
+                        + " jitter(p99.9-p50)=%.1f%n",
+                us(writeToDispatch, 50), us(writeToDispatch, 90), us(writeToDispatch, 99),
+                us(writeToDispatch, 99.9), us(writeToDispatch, 99.99), writeToDispatch.getMaxValue() / 1000.0,
+                us(writeToDispatch, 99.9) - us(writeToDispatch, 50));
+        System.exit(0);
+    }
+
+    private static double us(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
@@ -0,0 +1,164 @@
+package com.mexc;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Loopback stand-in for wbs.mexc.com: accepts SUBSCRIPTION requests and, on
+ * demand, replays recorded deals frames to whichever connection subscribed
+ * to each frame's symbol.
+ */
+final class LocalDealsServer implements AutoCloseable {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final RecordedFrames recorded;
+    private final int fragmentSize;
+    private final ByteBuf[] frames;
+    private final EventLoopGroup group = new NioEventLoopGroup(1);
+    private final Map<String, Channel> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriptions = new AtomicInteger();
+    private final Channel serverChannel;
+    private int next;
+
+    LocalDealsServer(RecordedFrames recorded) throws InterruptedException {
+        this(recorded, 0);
+    }
+
+    /** With a positive {@code fragmentSize}, frames are sent as a text frame plus continuation frames of that size. */
+    LocalDealsServer(RecordedFrames recorded, int fragmentSize) throws InterruptedException {
+        this.recorded = recorded;
+        this.fragmentSize = fragmentSize;
+        this.frames = new ByteBuf[recorded.size()];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = Unpooled.unreleasableBuffer(
+                    Unpooled.directBuffer().writeBytes(recorded.frames.get(i).getBytes(CharsetUtil.UTF_8)));
+        }
+
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(group)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(
+                                new HttpServerCodec(),
+                                new HttpObjectAggregator(65536),
+                                new WebSocketServerProtocolHandler("/ws"),
+                                new SubscriptionHandler());
+                    }
+                });
+        this.serverChannel = bootstrap.bind("127.0.0.1", 0).sync().channel();
+    }
+
+    URI uri() {
+        int port = ((InetSocketAddress) serverChannel.localAddress()).getPort();
+        return URI.create("ws://127.0.0.1:" + port + "/ws");
+    }
+
+    int subscriptions() {
+        return subscriptions.get();
+    }
+
+    /**
+     * Writes the next {@code count} recorded frames that have a subscriber and
+     * returns the number of trades they carry.
+     */
+    int push(int count) {
+        List<Channel> written = new ArrayList<>();
+        List<ByteBuf> payloads = new ArrayList<>(count);
+        List<Channel> targets = new ArrayList<>(count);
+        int trades = 0;
+        int skipped = 0;
+        while (payloads.size() < count && skipped < frames.length) {
+            int i = next;
+            next = (next + 1) % frames.length;
+            Channel channel = subscribers.get(recorded.frameSymbols.get(i));
+            if (channel == null) {
+                skipped++;
+                continue;
+            }
+            payloads.add(frames[i]);
+            targets.add(channel);
+            trades += recorded.tradeCounts.get(i);
+        }
+        group.next().execute(() -> {
+            for (int i = 0; i < payloads.size(); i++) {
+                Channel channel = targets.get(i);
+                write(channel, payloads.get(i).duplicate());
+                if (!written.contains(channel)) {
+                    written.add(channel);
+                }
+            }
+            for (Channel channel : written) {
+                channel.flush();
+            }
+        });
+        return trades;
+    }
+
+    private void write(Channel channel, ByteBuf payload) {
+        if (fragmentSize <= 0 || payload.readableBytes() <= fragmentSize) {
+            channel.write(new TextWebSocketFrame(payload));
+            return;
+        }
+        channel.write(new TextWebSocketFrame(false, 0, payload.readRetainedSlice(fragmentSize)));
+        while (payload.readableBytes() > fragmentSize) {
+            channel.write(new ContinuationWebSocketFrame(false, 0, payload.readRetainedSlice(fragmentSize)));
+        }
+        channel.write(new ContinuationWebSocketFrame(true, 0, payload));
+    }
+
+    @Override
+    public void close() {
+        serverChannel.close().awaitUninterruptibly();
+        group.shutdownGracefully().awaitUninterruptibly();
+    }
+
+    private final class SubscriptionHandler extends SimpleChannelInboundHandler<TextWebSocketFrame> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, TextWebSocketFrame frame) throws Exception {
+            JsonNode request = OBJECT_MAPPER.readTree(frame.text());
+            String method = request.path("method").asText();
+            if ("PING".equals(method)) {
+                ctx.writeAndFlush(new TextWebSocketFrame("{\"id\":0,\"code\":0,\"msg\":\"PONG\"}"));
+                return;
+            }
+            if (!"SUBSCRIPTION".equals(method)) {
+                return;
+            }
+            for (JsonNode param : request.path("params")) {
+                String channel = param.asText();
+                subscribers.put(channel.substring(channel.lastIndexOf('@') + 1), ctx.channel());
+                ctx.writeAndFlush(new TextWebSocketFrame("{\"id\":0,\"code\":0,\"msg\":\"" + channel + "\"}"));
+            }
+            subscriptions.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.mexc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replays recorded deals frames from a loopback WebSocket server through the
+ * Netty client under each {@link NettyTransportProfile}, optionally split into
+ * continuation frames that the pipeline has to reassemble.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar NettyTransportBenchmark -prof gc
+ * </pre>
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NettyTransportBenchmark {
+
+    static final int BATCH = 1000;
+
+    @Param({"baseline", "throughput"})
+    public String profile;
+
+    /** Continuation frame size in bytes; 0 sends every message as one frame. */
+    @Param({"0", "64"})
+    public int fragmentSize;
+
+    private LocalDealsServer server;
+    private DispatchRecorder recorder;
+    private NettyConnectionManager manager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        RecordedFrames recorded = RecordedFrames.load();
+        SymbolRegistry registry = new SymbolRegistry(recorded.symbols);
+        server = new LocalDealsServer(recorded, fragmentSize);
+        recorder = new DispatchRecorder();
+
+        NettyTransportProfile transport = "baseline".equals(profile)
+                ? NettyTransportProfile.baseline() : NettyTransportProfile.throughput();
+        NettyWebSocketClient.TRADES.start(recorder, "mexc-trades");
+        manager = new NettyConnectionManager(registry, new FeedMetrics("netty", registry),
+                NettyConnectionManager.defaultThreads(), ReconnectPolicy.defaults(), DealsFormat.JSON, transport);
+        System.out.println();
+        System.out.println("Netty transport: " + transport);
+        manager.connect(server.uri(), recorded.symbols).sync();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (server.subscriptions() < 1) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("netty did not subscribe");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        manager.close();
+        NettyWebSocketClient.TRADES.stop();
+        server.close();
+        System.out.println();
+        System.out.println(profile + " " + recorder.summary());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH)
+    public long replay() {
+        long target = recorder.dispatched() + server.push(BATCH);
+        recorder.awaitDispatched(target);
+        return target;
+    }
+}
@@ -0,0 +1,140 @@
+package com.mexc;
+
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replays recorded deals frames from a loopback WebSocket server through each
+ * client's real receive path (socket, decode, trade ring) and waits for the
+ * ring's consumer to dispatch them.
+ *
+ * <ul>
+ *   <li>{@code replay}: frames per second, and with {@code -prof gc} bytes allocated per frame.</li>
+ *   <li>{@code singleFrame}: sampled server-write-to-dispatch time per frame (p50/p99/p99.9).</li>
+ * </ul>
+ *
+ * At the end of each trial the receive-to-dispatch histogram, measured from the
+ * moment the client started decoding a frame, is printed as well.
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReceivePathBenchmark {
+
+    static final int BATCH = 1000;
+
+    @Param({"jdk", "netty", "vertx"})
+    public String client;
+
+    private LocalDealsServer server;
+    private DispatchRecorder recorder;
+    private NettyConnectionManager nettyManager;
+    private Vertx vertx;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        RecordedFrames recorded = RecordedFrames.load();
+        SymbolRegistry registry = new SymbolRegistry(recorded.symbols);
+        server = new LocalDealsServer(recorded);
+        recorder = new DispatchRecorder();
+
+        int connections;
+        switch (client) {
+            case "jdk":
+                MexcWebSocketClient.init(server.uri(), registry);
+                MexcWebSocketClient.TRADES.start(recorder, MexcWebSocketClient.AFFINITY.consumerThread("mexc-trades"));
+                new MexcWebSocketClient.WebSocketClientListener(recorded.symbols).connect().join();
+                connections = 1;
+                break;
+            case "netty":
+                NettyWebSocketClient.TRADES.start(recorder, NettyWebSocketClient.AFFINITY.consumerThread("mexc-trades"));
+                nettyManager = new NettyConnectionManager(registry);
+                nettyManager.connect(server.uri(), recorded.symbols).sync();
+                connections = 1;
+                break;
+            case "vertx":
+                vertx = Vertx.vertx();
+                WebSocketClientVerticle verticle = new WebSocketClientVerticle() {
+                    @Override
+                    TradeHandler downstream() {
+                        return recorder;
+                    }
+                };
+                JsonObject config = new JsonObject()
+                        .put("wsUrl", server.uri().toString())
+                        .put("symbols", new JsonArray(recorded.symbols));
+                vertx.deployVerticle(verticle, new DeploymentOptions().setConfig(config))
+                        .toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+                connections = ShardPlanner.defaults().connectionsFor(recorded.symbols.size());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown client: " + client);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (server.subscriptions() < connections) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException(client + " did not subscribe");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        switch (client) {
+            case "jdk":
+                MexcWebSocketClient.TRADES.stop();
+                break;
+            case "netty":
+                nettyManager.close();
+                NettyWebSocketClient.TRADES.stop();
+                break;
+            default:
+                vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+        server.close();
+        System.out.println();
+        System.out.println(client + " " + recorder.summary());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH)
+    public long replay() {
+        return replayAndAwait(BATCH);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long singleFrame() {
+        return replayAndAwait(1);
+    }
+
+    private long replayAndAwait(int frames) {
+        long target = recorder.dispatched() + server.push(frames);
+        recorder.awaitDispatched(target);
+        return target;
+    }
+}
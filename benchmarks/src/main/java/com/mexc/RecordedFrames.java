@@ -0,0 +1,58 @@
+package com.mexc;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Deals frames in MEXC's wire format, one per line of {@code deals-frames.txt},
+ * together with the symbol and number of deals each one carries.
+ */
+final class RecordedFrames {
+
+    final List<String> frames = new ArrayList<>();
+    final List<String> frameSymbols = new ArrayList<>();
+    final List<Integer> tradeCounts = new ArrayList<>();
+    final List<String> symbols;
+
+    private RecordedFrames() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        Set<String> seen = new LinkedHashSet<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                RecordedFrames.class.getResourceAsStream("/deals-frames.txt"), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                JsonNode frame = mapper.readTree(line);
+                String symbol = frame.get("s").asText();
+                frames.add(line);
+                frameSymbols.add(symbol);
+                tradeCounts.add(frame.get("d").get("deals").size());
+                seen.add(symbol);
+            }
+        }
+        this.symbols = new ArrayList<>(seen);
+    }
+
+    static RecordedFrames load() {
+        try {
+            return new RecordedFrames();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read deals-frames.txt", e);
+        }
+    }
+
+    int size() {
+        return frames.size();
+    }
+}
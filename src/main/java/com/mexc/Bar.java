@@ -0,0 +1,55 @@
+package com.mexc;
+
+/**
+ * An OHLCV bar for one symbol and interval. Like {@link Trade}, instances handed
+ * to a {@link BarListener} are reused, so keep a {@link #copy()} if needed.
+ */
+public class Bar {
+
+    public int symbolId;
+    public long intervalMillis;
+    /** Start of the bar in exchange time, a multiple of the interval. */
+    public long startMillis;
+    public double open;
+    public double high;
+    public double low;
+    public double close;
+    public double volume;
+    public double buyVolume;
+    public double sellVolume;
+    /** Sum of price * quantity, from which {@link #vwap()} is derived. */
+    public double notional;
+    public long trades;
+
+    public double vwap() {
+        return volume == 0 ? close : notional / volume;
+    }
+
+    public Bar set(Bar other) {
+        this.symbolId = other.symbolId;
+        this.intervalMillis = other.intervalMillis;
+        this.startMillis = other.startMillis;
+        this.open = other.open;
+        this.high = other.high;
+        this.low = other.low;
+        this.close = other.close;
+        this.volume = other.volume;
+        this.buyVolume = other.buyVolume;
+        this.sellVolume = other.sellVolume;
+        this.notional = other.notional;
+        this.trades = other.trades;
+        return this;
+    }
+
+    public Bar copy() {
+        return new Bar().set(this);
+    }
+
+    @Override
+    public String toString() {
+        return "Bar{symbolId=" + symbolId + ", interval=" + intervalMillis + "ms, start=" + startMillis
+                + ", open=" + open + ", high=" + high + ", low=" + low + ", close=" + close
+                + ", volume=" + volume + ", buyVolume=" + buyVolume + ", sellVolume=" + sellVolume
+                + ", vwap=" + vwap() + ", trades=" + trades + '}';
+    }
+}
@@ -0,0 +1,229 @@
+package com.mexc;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Rolling OHLCV bars, VWAP and buy/sell volume per symbol and interval, updated
+ * incrementally as trades arrive. Everything lives in primitive arrays indexed
+ * by {@code interval * symbols + symbolId}.
+ *
+ * <p>Like {@link SymbolStateTable} it is written by a single thread, the trade
+ * ring's consumer. Bars are cut by exchange time: a bar completes when a later
+ * trade for its symbol arrives, or when the newest trade seen on any symbol is
+ * {@code graceMillis} past its end. Completed bars go to the {@link BarListener}s
+ * on the writing thread. A trade older than its symbol's last completed bar is
+ * counted in {@link #lateTrades()} and folded into the following bar, so no bar
+ * is emitted twice.
+ *
+ * <p>Other threads read the bar in progress through {@link #snapshot}, which is
+ * guarded by a per-slot sequence lock rather than a mutex: the writer never waits
+ * and a reader retries if it overlapped a write.
+ */
+public class BarAggregator implements TradeHandler {
+
+    public static final long SECOND = 1_000;
+    public static final long MINUTE = 60_000;
+    public static final long FIVE_MINUTES = 300_000;
+
+    private static final VarHandle SEQUENCE = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final int symbols;
+    private final long[] intervals;
+    private final long graceMillis;
+    private final List<BarListener> listeners = new CopyOnWriteArrayList<>();
+    private final Bar completed = new Bar();
+
+    // Odd while the slot is being written.
+    private final long[] sequence;
+    private final long[] start;
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final double[] volume;
+    private final double[] buyVolume;
+    private final double[] sellVolume;
+    private final double[] notional;
+    private final long[] trades;
+
+    private long watermark = Long.MIN_VALUE;
+    private long sweptUntil = Long.MIN_VALUE;
+    private long lateTrades;
+
+    /** 1s, 1m and 5m bars, swept half a second after they end. */
+    public BarAggregator(int symbols) {
+        this(symbols, 500, SECOND, MINUTE, FIVE_MINUTES);
+    }
+
+    public BarAggregator(int symbols, long graceMillis, long... intervalsMillis) {
+        if (intervalsMillis.length == 0) {
+            throw new IllegalArgumentException("No bar intervals");
+        }
+        this.symbols = symbols;
+        this.intervals = intervalsMillis.clone();
+        Arrays.sort(this.intervals);
+        this.graceMillis = graceMillis;
+        int slots = symbols * intervals.length;
+        this.sequence = new long[slots];
+        this.start = new long[slots];
+        this.open = new double[slots];
+        this.high = new double[slots];
+        this.low = new double[slots];
+        this.close = new double[slots];
+        this.volume = new double[slots];
+        this.buyVolume = new double[slots];
+        this.sellVolume = new double[slots];
+        this.notional = new double[slots];
+        this.trades = new long[slots];
+        Arrays.fill(start, Long.MIN_VALUE);
+    }
+
+    public void addListener(BarListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(BarListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void onTrade(Trade trade) {
+        long time = trade.timestamp;
+        if (time > watermark) {
+            watermark = time;
+            // Sweeping at most once per shortest interval keeps the cost off the per-trade path.
+            if (time - graceMillis >= sweptUntil + intervals[0]) {
+                sweep(time - graceMillis);
+            }
+        }
+        for (int k = 0; k < intervals.length; k++) {
+            long interval = intervals[k];
+            int slot = k * symbols + trade.symbolId;
+            long barStart = Math.floorDiv(time, interval) * interval;
+            if (trades[slot] > 0 && barStart > start[slot]) {
+                complete(k, slot);
+            }
+            boolean late = barStart < start[slot] || barStart == start[slot] && trades[slot] == 0;
+            if (late && k == 0) {
+                lateTrades++;
+            }
+            beginWrite(slot);
+            if (trades[slot] == 0) {
+                if (late) {
+                    barStart = start[slot] + interval;
+                }
+                start[slot] = barStart;
+                open[slot] = trade.price;
+                high[slot] = trade.price;
+                low[slot] = trade.price;
+            } else if (trade.price > high[slot]) {
+                high[slot] = trade.price;
+            } else if (trade.price < low[slot]) {
+                low[slot] = trade.price;
+            }
+            close[slot] = trade.price;
+            volume[slot] += trade.quantity;
+            notional[slot] += trade.price * trade.quantity;
+            if (trade.side == Trade.BUY) {
+                buyVolume[slot] += trade.quantity;
+            } else {
+                sellVolume[slot] += trade.quantity;
+            }
+            trades[slot]++;
+            endWrite(slot);
+        }
+    }
+
+    /** Completes every bar that ended at or before the given exchange time. */
+    private void sweep(long until) {
+        sweptUntil = Math.floorDiv(until, intervals[0]) * intervals[0];
+        for (int k = 0; k < intervals.length; k++) {
+            long interval = intervals[k];
+            int from = k * symbols;
+            for (int slot = from; slot < from + symbols; slot++) {
+                if (trades[slot] > 0 && start[slot] + interval <= until) {
+                    complete(k, slot);
+                }
+            }
+        }
+    }
+
+    private void complete(int k, int slot) {
+        read(k, slot, completed);
+        beginWrite(slot);
+        open[slot] = 0;
+        high[slot] = 0;
+        low[slot] = 0;
+        close[slot] = 0;
+        volume[slot] = 0;
+        buyVolume[slot] = 0;
+        sellVolume[slot] = 0;
+        notional[slot] = 0;
+        trades[slot] = 0;
+        endWrite(slot);
+        for (BarListener listener : listeners) {
+            listener.onBar(completed);
+        }
+    }
+
+    private void beginWrite(int slot) {
+        SEQUENCE.setOpaque(sequence, slot, sequence[slot] + 1);
+        VarHandle.storeStoreFence();
+    }
+
+    private void endWrite(int slot) {
+        SEQUENCE.setRelease(sequence, slot, sequence[slot] + 1);
+    }
+
+    /**
+     * Copies the bar in progress for the symbol and interval into {@code into}.
+     * Safe from any thread. Returns false if the symbol has not traded since its
+     * last bar completed, in which case {@code into} holds an empty bar.
+     */
+    public boolean snapshot(int symbolId, long intervalMillis, Bar into) {
+        int k = Arrays.binarySearch(intervals, intervalMillis);
+        if (k < 0) {
+            throw new IllegalArgumentException("No " + intervalMillis + " ms bars");
+        }
+        int slot = k * symbols + symbolId;
+        while (true) {
+            long before = (long) SEQUENCE.getAcquire(sequence, slot);
+            if ((before & 1) == 0) {
+                read(k, slot, into);
+                VarHandle.loadLoadFence();
+                if ((long) SEQUENCE.getOpaque(sequence, slot) == before) {
+                    return into.trades > 0;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private void read(int k, int slot, Bar into) {
+        into.symbolId = slot - k * symbols;
+        into.intervalMillis = intervals[k];
+        into.startMillis = start[slot];
+        into.open = open[slot];
+        into.high = high[slot];
+        into.low = low[slot];
+        into.close = close[slot];
+        into.volume = volume[slot];
+        into.buyVolume = buyVolume[slot];
+        into.sellVolume = sellVolume[slot];
+        into.notional = notional[slot];
+        into.trades = trades[slot];
+    }
+
+    public long[] intervals() {
+        return intervals.clone();
+    }
+
+    /** Trades that arrived after their shortest-interval bar had completed. */
+    public long lateTrades() {
+        return lateTrades;
+    }
+}
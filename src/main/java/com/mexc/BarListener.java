@@ -0,0 +1,10 @@
+package com.mexc;
+
+public interface BarListener {
+
+    /**
+     * Called on the aggregating thread once per completed bar. The bar is only
+     * valid for the duration of the call.
+     */
+    void onBar(Bar bar);
+}
@@ -0,0 +1,77 @@
+package com.mexc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for one logical connection. It keeps the same instance across
+ * reconnects, so its totals cover the connection's whole lifetime.
+ */
+public class ConnectionMetrics implements ConnectionMetricsMBean {
+
+    private final String name;
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder missedPongs = new LongAdder();
+    private final LatencyHistogram pingRttNanos = new LatencyHistogram();
+
+    ConnectionMetrics(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public void messageReceived(int size) {
+        messages.increment();
+        bytes.add(size);
+    }
+
+    public void reconnected() {
+        reconnects.increment();
+    }
+
+    public void recordPingRtt(long nanos) {
+        pingRttNanos.record(nanos);
+    }
+
+    public void missedPong() {
+        missedPongs.increment();
+    }
+
+    LatencyHistogram pingRtt() {
+        return pingRttNanos;
+    }
+
+    @Override
+    public long getMessages() {
+        return messages.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getReconnects() {
+        return reconnects.sum();
+    }
+
+    @Override
+    public long getMissedPongs() {
+        return missedPongs.sum();
+    }
+
+    @Override
+    public long getPingRttP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(pingRttNanos.percentile(50));
+    }
+
+    @Override
+    public long getPingRttP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(pingRttNanos.percentile(99));
+    }
+}
@@ -0,0 +1,16 @@
+package com.mexc;
+
+public interface ConnectionMetricsMBean {
+
+    long getMessages();
+
+    long getBytes();
+
+    long getReconnects();
+
+    long getMissedPongs();
+
+    long getPingRttP50Micros();
+
+    long getPingRttP99Micros();
+}
@@ -0,0 +1,127 @@
+package com.mexc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Encodes the client's control-plane messages. The PING never changes, so it is
+ * encoded once into a shared read-only buffer that every connection writes a
+ * duplicate of. Subscription changes are packed into as few frames as the
+ * server accepts and written as plain ASCII, without going through Jackson.
+ * Replies to these requests are recognised by their first bytes, so PONGs and
+ * acks can be taken off the data path before any decoding.
+ */
+public final class ControlFrames {
+
+    /** Channels per SUBSCRIPTION/UNSUBSCRIPTION frame; MEXC rejects requests beyond its subscription limit. */
+    public static final int MAX_PARAMS_PER_FRAME = Integer.getInteger(
+            "mexc.ws.max.params", ShardPlanner.MEXC_MAX_SUBSCRIPTIONS);
+
+    public static final String PING = "{\"method\":\"PING\"}";
+
+    private static final ByteBuf PING_BUFFER = Unpooled.unreleasableBuffer(
+            Unpooled.directBuffer(PING.length()).writeBytes(PING.getBytes(CharsetUtil.US_ASCII)).asReadOnly());
+
+    // Replies are {"id":0,"code":0,"msg":"..."}; pushes open with their channel instead.
+    private static final String REPLY_PREFIX = "{\"id\":";
+    private static final String PONG_SUFFIX = "\"PONG\"}";
+
+    private ControlFrames() {
+    }
+
+    /** Whether a text frame is a reply to a request (a PONG or a subscription ack) rather than a push. */
+    public static boolean isReply(ByteBuf frame) {
+        return regionMatches(frame, frame.readerIndex(), REPLY_PREFIX);
+    }
+
+    public static boolean isReply(CharSequence frame) {
+        return regionMatches(frame, 0, REPLY_PREFIX);
+    }
+
+    /** Whether a reply is the PONG. */
+    public static boolean isPong(ByteBuf reply) {
+        return regionMatches(reply, reply.writerIndex() - PONG_SUFFIX.length(), PONG_SUFFIX);
+    }
+
+    public static boolean isPong(CharSequence reply) {
+        return regionMatches(reply, reply.length() - PONG_SUFFIX.length(), PONG_SUFFIX);
+    }
+
+    private static boolean regionMatches(ByteBuf frame, int at, String expected) {
+        if (at < frame.readerIndex() || at + expected.length() > frame.writerIndex()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (frame.getByte(at + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionMatches(CharSequence frame, int at, String expected) {
+        if (at < 0 || at + expected.length() > frame.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (frame.charAt(at + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** A PING frame over the shared payload; writing and releasing it leaves the payload intact. */
+    public static TextWebSocketFrame ping() {
+        return new TextWebSocketFrame(PING_BUFFER.duplicate());
+    }
+
+    /** The request(s) for the channels as text, at most {@link #MAX_PARAMS_PER_FRAME} channels each. */
+    public static List<String> subscriptions(String method, List<String> channels) {
+        List<String> messages = new ArrayList<>(frameCount(channels));
+        StringBuilder message = new StringBuilder();
+        for (int from = 0; from < channels.size(); from += MAX_PARAMS_PER_FRAME) {
+            message.setLength(0);
+            encode(message, method, channels, from, Math.min(channels.size(), from + MAX_PARAMS_PER_FRAME));
+            messages.add(message.toString());
+        }
+        return messages;
+    }
+
+    /** The request(s) for the channels as frames whose payloads come straight from the allocator. */
+    public static List<TextWebSocketFrame> subscriptionFrames(ByteBufAllocator alloc, String method, List<String> channels) {
+        List<TextWebSocketFrame> frames = new ArrayList<>(frameCount(channels));
+        StringBuilder message = new StringBuilder();
+        for (int from = 0; from < channels.size(); from += MAX_PARAMS_PER_FRAME) {
+            message.setLength(0);
+            encode(message, method, channels, from, Math.min(channels.size(), from + MAX_PARAMS_PER_FRAME));
+            ByteBuf payload = alloc.buffer(message.length());
+            ByteBufUtil.writeAscii(payload, message);
+            frames.add(new TextWebSocketFrame(payload));
+        }
+        return frames;
+    }
+
+    private static int frameCount(List<String> channels) {
+        return (channels.size() + MAX_PARAMS_PER_FRAME - 1) / MAX_PARAMS_PER_FRAME;
+    }
+
+    // Channel names are ASCII letters, digits, '@', '.' and '_', so nothing needs escaping.
+    private static void encode(StringBuilder out, String method, List<String> channels, int from, int to) {
+        out.append("{\"method\":\"").append(method).append("\",\"params\":[");
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                out.append(',');
+            }
+            out.append('"').append(channels.get(i)).append('"');
+        }
+        out.append("]}");
+    }
+}
@@ -0,0 +1,515 @@
+package com.mexc;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Streaming decoder for {@code spot@public.deals.v3.api} push frames:
+ *
+ * <pre>
+ * {"c":"spot@public.deals.v3.api@BTCUSDT",
+ *  "d":{"deals":[{"S":1,"p":"27500.01","t":1700000000000,"v":"0.0012"}],"e":"spot@public.deals.v3.api"},
+ *  "s":"BTCUSDT","t":1700000000001}
+ * </pre>
+ *
+ * The frame is scanned in place, straight from the ByteBuf or CharSequence it
+ * arrived in. Symbols are resolved to ids without creating strings and deals are
+ * handed out through one reused {@link Trade}, so decoding does not allocate.
+ * An instance is not thread-safe; use one per connection.
+ */
+public class DealsDecoder {
+
+    /** Returned by {@code decode} for frames that are not deals pushes (acks, PONGs, errors). */
+    public static final int NOT_DEALS = -1;
+
+    private static final MalformedFrameException MALFORMED = new MalformedFrameException();
+    static final double[] POW10 = new double[19];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private final SymbolRegistry symbols;
+    private final Trade trade = new Trade();
+    private final ByteBufInput byteBufInput = new ByteBufInput();
+    private final CharSequenceInput charSequenceInput = new CharSequenceInput();
+
+    // Deals are buffered until the whole frame is scanned because "s" may follow "d".
+    private double[] prices = new double[16];
+    private double[] quantities = new double[16];
+    private long[] timestamps = new long[16];
+    private byte[] sides = new byte[16];
+    private int count;
+    private boolean deals;
+    private int symbolStart;
+    private int symbolEnd;
+    private int channelStart;
+    private int channelEnd;
+
+    private Input in;
+    private int pos;
+    private int end;
+
+    public DealsDecoder(SymbolRegistry symbols) {
+        this.symbols = symbols;
+    }
+
+    public int decode(ByteBuf frame, TradeHandler handler) {
+        byteBufInput.reset(frame);
+        try {
+            return decode(byteBufInput, handler);
+        } finally {
+            byteBufInput.reset(null);
+        }
+    }
+
+    public int decode(CharSequence frame, TradeHandler handler) {
+        charSequenceInput.reset(frame);
+        try {
+            return decode(charSequenceInput, handler);
+        } finally {
+            charSequenceInput.reset(null);
+        }
+    }
+
+    private int decode(Input input, TradeHandler handler) {
+        long receivedNanos = System.nanoTime();
+        in = input;
+        pos = 0;
+        end = input.length();
+        count = 0;
+        deals = false;
+        symbolStart = -1;
+        channelStart = -1;
+        try {
+            skipWhitespace();
+            if (pos >= end || in.at(pos) != '{') {
+                return NOT_DEALS;
+            }
+            parseFrame();
+        } catch (MalformedFrameException e) {
+            return NOT_DEALS;
+        }
+        if (!deals) {
+            return NOT_DEALS;
+        }
+
+        int symbolId = -1;
+        if (symbolStart >= 0) {
+            symbolId = symbols.lookup(in, symbolStart, symbolEnd);
+        } else if (channelStart >= 0) {
+            int at = channelEnd - 1;
+            while (at > channelStart && in.at(at) != '@') {
+                at--;
+            }
+            symbolId = symbols.lookup(in, at + 1, channelEnd);
+        }
+        if (symbolId < 0) {
+            return 0;
+        }
+
+        Trade t = trade;
+        for (int i = 0; i < count; i++) {
+            t.symbolId = symbolId;
+            t.price = prices[i];
+            t.quantity = quantities[i];
+            t.side = sides[i];
+            t.timestamp = timestamps[i];
+            t.receivedNanos = receivedNanos;
+            handler.onTrade(t);
+        }
+        return count;
+    }
+
+    private void parseFrame() {
+        pos++;
+        if (nextNonWhitespace() == '}') {
+            pos++;
+            return;
+        }
+        while (true) {
+            int keyStart = readString();
+            int keyEnd = pos - 1;
+            expect(':');
+            skipWhitespace();
+            if (isKey(keyStart, keyEnd, 'd')) {
+                parseData();
+            } else if (isKey(keyStart, keyEnd, 's')) {
+                symbolStart = readString();
+                symbolEnd = pos - 1;
+            } else if (isKey(keyStart, keyEnd, 'c')) {
+                channelStart = readString();
+                channelEnd = pos - 1;
+            } else {
+                skipValue();
+            }
+            if (!nextMember('}')) {
+                return;
+            }
+        }
+    }
+
+    private void parseData() {
+        if (peek() != '{') {
+            skipValue();
+            return;
+        }
+        pos++;
+        if (nextNonWhitespace() == '}') {
+            pos++;
+            return;
+        }
+        while (true) {
+            int keyStart = readString();
+            int keyEnd = pos - 1;
+            expect(':');
+            skipWhitespace();
+            if (keyEnd - keyStart == 5 && matches(keyStart, "deals") && peek() == '[') {
+                deals = true;
+                parseDeals();
+            } else {
+                skipValue();
+            }
+            if (!nextMember('}')) {
+                return;
+            }
+        }
+    }
+
+    private void parseDeals() {
+        pos++;
+        if (nextNonWhitespace() == ']') {
+            pos++;
+            return;
+        }
+        while (true) {
+            if (nextNonWhitespace() != '{') {
+                throw MALFORMED;
+            }
+            parseDeal();
+            if (!nextMember(']')) {
+                return;
+            }
+        }
+    }
+
+    private void parseDeal() {
+        ensureCapacity();
+        int i = count;
+        prices[i] = 0;
+        quantities[i] = 0;
+        timestamps[i] = 0;
+        sides[i] = 0;
+
+        pos++;
+        if (nextNonWhitespace() == '}') {
+            pos++;
+            count++;
+            return;
+        }
+        while (true) {
+            int keyStart = readString();
+            int keyEnd = pos - 1;
+            expect(':');
+            skipWhitespace();
+            if (keyEnd - keyStart != 1) {
+                skipValue();
+            } else {
+                switch (in.at(keyStart)) {
+                    case 'p':
+                        prices[i] = readDecimal();
+                        break;
+                    case 'v':
+                        quantities[i] = readDecimal();
+                        break;
+                    case 't':
+                        timestamps[i] = (long) readDecimal();
+                        break;
+                    case 'S':
+                        sides[i] = (byte) readDecimal();
+                        break;
+                    default:
+                        skipValue();
+                }
+            }
+            if (!nextMember('}')) {
+                break;
+            }
+        }
+        count++;
+    }
+
+    private void ensureCapacity() {
+        if (count < prices.length) {
+            return;
+        }
+        int size = prices.length * 2;
+        prices = Arrays.copyOf(prices, size);
+        quantities = Arrays.copyOf(quantities, size);
+        timestamps = Arrays.copyOf(timestamps, size);
+        sides = Arrays.copyOf(sides, size);
+    }
+
+    /** Reads a number that may be quoted, as MEXC sends prices and quantities as strings. */
+    private double readDecimal() {
+        boolean quoted = peek() == '"';
+        if (quoted) {
+            pos++;
+        }
+        boolean negative = false;
+        if (peek() == '-') {
+            negative = true;
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        while (pos < end) {
+            int c = in.at(pos);
+            if (c >= '0' && c <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    if (fraction) {
+                        scale++;
+                    }
+                } else if (!fraction) {
+                    scale--;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+            pos++;
+        }
+        double value = scaled(mantissa, scale);
+        if (pos < end && (in.at(pos) == 'e' || in.at(pos) == 'E')) {
+            pos++;
+            int sign = peek();
+            boolean negativeExponent = sign == '-';
+            if (sign == '-' || sign == '+') {
+                pos++;
+            }
+            int exponent = 0;
+            while (pos < end && in.at(pos) >= '0' && in.at(pos) <= '9') {
+                exponent = exponent * 10 + (in.at(pos++) - '0');
+            }
+            value *= Math.pow(10, negativeExponent ? -exponent : exponent);
+        }
+        if (quoted) {
+            if (pos >= end || in.at(pos) != '"') {
+                throw MALFORMED;
+            }
+            pos++;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * {@code mantissa / 10^scale}. Only 18 digits reach the mantissa, so a scale
+     * below {@code -18} means more than 36 integer digits: no price or quantity.
+     */
+    static double scaled(long mantissa, int scale) {
+        if (-scale >= POW10.length) {
+            throw MALFORMED;
+        }
+        return scale >= 0 ? mantissa / POW10[scale] : mantissa * POW10[-scale];
+    }
+
+    /** Consumes a string and returns the index of its first character; {@code pos - 1} is its end. */
+    private int readString() {
+        if (pos >= end || in.at(pos) != '"') {
+            throw MALFORMED;
+        }
+        int start = ++pos;
+        while (pos < end) {
+            int c = in.at(pos++);
+            if (c == '"') {
+                return start;
+            }
+            if (c == '\\') {
+                pos++;
+            }
+        }
+        throw MALFORMED;
+    }
+
+    private void skipValue() {
+        if (pos >= end) {
+            throw MALFORMED;
+        }
+        int c = in.at(pos);
+        if (c == '"') {
+            readString();
+        } else if (c == '{' || c == '[') {
+            skipContainer();
+        } else {
+            while (pos < end) {
+                c = in.at(pos);
+                if (c == ',' || c == '}' || c == ']' || c <= ' ') {
+                    return;
+                }
+                pos++;
+            }
+        }
+    }
+
+    private void skipContainer() {
+        int depth = 0;
+        while (pos < end) {
+            int c = in.at(pos);
+            if (c == '"') {
+                readString();
+                continue;
+            }
+            pos++;
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if ((c == '}' || c == ']') && --depth == 0) {
+                return;
+            }
+        }
+        throw MALFORMED;
+    }
+
+    /** Consumes the separator after a member; returns false once the closing character is reached. */
+    private boolean nextMember(char close) {
+        int c = nextNonWhitespace();
+        pos++;
+        if (c == ',') {
+            skipWhitespace();
+            return true;
+        }
+        if (c == close) {
+            return false;
+        }
+        throw MALFORMED;
+    }
+
+    private void expect(char expected) {
+        if (nextNonWhitespace() != expected) {
+            throw MALFORMED;
+        }
+        pos++;
+    }
+
+    private int nextNonWhitespace() {
+        skipWhitespace();
+        if (pos >= end) {
+            throw MALFORMED;
+        }
+        return in.at(pos);
+    }
+
+    /** The character at {@code pos}, or -1 past the end of a truncated frame. */
+    private int peek() {
+        return pos < end ? in.at(pos) : -1;
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && in.at(pos) <= ' ') {
+            pos++;
+        }
+    }
+
+    private boolean isKey(int start, int end, char key) {
+        return end - start == 1 && in.at(start) == key;
+    }
+
+    private boolean matches(int start, String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (in.at(start + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Random access to the frame's characters; ASCII is all the deals channel ever carries. */
+    abstract static class Input {
+        abstract int length();
+
+        abstract int at(int index);
+    }
+
+    static final class ByteBufInput extends Input {
+        private ByteBuf buf;
+        private int base;
+        private int length;
+
+        void reset(ByteBuf buf) {
+            this.buf = buf;
+            if (buf != null) {
+                this.base = buf.readerIndex();
+                this.length = buf.readableBytes();
+            }
+        }
+
+        @Override
+        int length() {
+            return length;
+        }
+
+        @Override
+        int at(int index) {
+            return buf.getByte(base + index) & 0xFF;
+        }
+    }
+
+    static final class ByteBufferInput extends Input {
+        private ByteBuffer buf;
+        private int base;
+        private int length;
+
+        void reset(ByteBuffer buf) {
+            this.buf = buf;
+            if (buf != null) {
+                this.base = buf.position();
+                this.length = buf.remaining();
+            }
+        }
+
+        @Override
+        int length() {
+            return length;
+        }
+
+        @Override
+        int at(int index) {
+            return buf.get(base + index) & 0xFF;
+        }
+    }
+
+    static final class CharSequenceInput extends Input {
+        private CharSequence chars;
+
+        void reset(CharSequence chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        int length() {
+            return chars.length();
+        }
+
+        @Override
+        int at(int index) {
+            return chars.charAt(index);
+        }
+    }
+
+    static final class MalformedFrameException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        MalformedFrameException() {
+            super("Malformed deals frame", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.mexc;
+
+import java.util.Locale;
+
+/**
+ * Wire format of the deals push channel a connection subscribes to. JSON pushes
+ * arrive as text frames and are read by {@link DealsDecoder}; protobuf pushes
+ * arrive as binary frames and are read by {@link ProtobufDealsDecoder}. Acks and
+ * PONGs are JSON text in both cases.
+ */
+public enum DealsFormat {
+    JSON("spot@public.deals.v3.api@"),
+    PROTOBUF("spot@public.aggre.deals.v3.api.pb@100ms@");
+
+    private final String channelPrefix;
+
+    DealsFormat(String channelPrefix) {
+        this.channelPrefix = channelPrefix;
+    }
+
+    public String channelPrefix() {
+        return channelPrefix;
+    }
+
+    /** Reads {@code -Dmexc.deals.format=json|protobuf}, defaulting to JSON. */
+    public static DealsFormat fromSystemProperties() {
+        return valueOf(System.getProperty("mexc.deals.format", "json").toUpperCase(Locale.ROOT));
+    }
+}
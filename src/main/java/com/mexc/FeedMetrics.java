@@ -0,0 +1,298 @@
+package com.mexc;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics for one client's feed: per-connection traffic, reconnects and ping
+ * RTT, per-symbol trade counts, decode time and exchange-to-receive lag
+ * histograms, and trade queue depth. Published over JMX under
+ * {@code com.mexc:client=<client>} and, via {@link MetricsHttpServer}, in the
+ * Prometheus text format.
+ */
+public class FeedMetrics implements FeedMetricsMBean {
+
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final String client;
+    private final SymbolRegistry registry;
+    private final Map<String, ConnectionMetrics> connections = new ConcurrentSkipListMap<>();
+    private final AtomicInteger connectionIds = new AtomicInteger();
+    private final LatencyHistogram decodeNanos = new LatencyHistogram();
+    private final LatencyHistogram lagMillis = new LatencyHistogram();
+    private final TradeHandler lagRecorder = this::recordLag;
+    private final List<TradeRingBuffer> queues = new CopyOnWriteArrayList<>();
+    private final List<SymbolStateTable> states = new CopyOnWriteArrayList<>();
+    private final List<TradeArbiter> arbiters = new CopyOnWriteArrayList<>();
+    private volatile boolean registered;
+    private long lastSummaryTrades;
+
+    public FeedMetrics(String client, SymbolRegistry registry) {
+        this.client = client;
+        this.registry = registry;
+    }
+
+    /**
+     * Adds a trade ring and the state table it feeds. A client that runs several
+     * pipelines (one per verticle instance) binds each, and the queue, drop and
+     * trade figures are summed across them.
+     */
+    public void bind(TradeRingBuffer queue, SymbolStateTable state) {
+        queues.add(queue);
+        states.add(state);
+    }
+
+    /** Adds an arbiter in front of a bound ring; the copies it drops are not counted as trades. */
+    public void bind(TradeArbiter arbiter) {
+        arbiters.add(arbiter);
+    }
+
+    public ConnectionMetrics newConnection() {
+        ConnectionMetrics connection = new ConnectionMetrics("conn-" + connectionIds.getAndIncrement());
+        connections.put(connection.name(), connection);
+        if (registered) {
+            register(connection, "com.mexc:type=Connection,client=" + client + ",name=" + connection.name());
+        }
+        return connection;
+    }
+
+    public void recordDecode(long nanos) {
+        decodeNanos.record(nanos);
+    }
+
+    /** A downstream stage that records exchange-timestamp-to-receive lag for each trade. */
+    public TradeHandler lagRecorder() {
+        return lagRecorder;
+    }
+
+    private void recordLag(Trade trade) {
+        long receivedMillis = System.currentTimeMillis() - (System.nanoTime() - trade.receivedNanos) / 1_000_000;
+        lagMillis.record(Math.max(0, receivedMillis - trade.timestamp));
+    }
+
+    public void registerMBeans() {
+        register(this, "com.mexc:type=Feed,client=" + client);
+        for (ConnectionMetrics connection : connections.values()) {
+            register(connection, "com.mexc:type=Connection,client=" + client + ",name=" + connection.name());
+        }
+        registered = true;
+    }
+
+    private static void register(Object bean, String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName(name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(bean, objectName);
+            }
+        } catch (JMException e) {
+            System.err.println("Failed to register MBean " + name + ": " + e.getMessage());
+        }
+    }
+
+    /** One console line covering the interval since the previous call. */
+    public synchronized String summary() {
+        long trades = getTrades();
+        String line = "Number of messages: " + (trades - lastSummaryTrades)
+                + " (connections: " + getConnections()
+                + ", queued: " + getQueueDepth()
+                + ", dropped: " + getDroppedTrades()
+                + ", reconnects: " + getReconnects()
+                + (arbiters.isEmpty() ? "" : ", duplicates: " + getDuplicateTrades())
+                + ", decode p99: " + getDecodeP99Nanos() + " ns"
+                + ", lag p99: " + getLagP99Millis() + " ms)";
+        lastSummaryTrades = trades;
+        return line;
+    }
+
+    public void writePrometheus(StringBuilder out) {
+        String labels = "client=\"" + client + "\"";
+
+        header(out, "mexc_messages_total", "counter", "WebSocket data messages received, excluding PONGs and acks");
+        for (ConnectionMetrics c : connections.values()) {
+            sample(out, "mexc_messages_total", labels + ",connection=\"" + c.name() + "\"", c.getMessages());
+        }
+        header(out, "mexc_bytes_total", "counter", "WebSocket payload bytes received");
+        for (ConnectionMetrics c : connections.values()) {
+            sample(out, "mexc_bytes_total", labels + ",connection=\"" + c.name() + "\"", c.getBytes());
+        }
+        header(out, "mexc_reconnects_total", "counter", "Reconnects after a dropped socket");
+        for (ConnectionMetrics c : connections.values()) {
+            sample(out, "mexc_reconnects_total", labels + ",connection=\"" + c.name() + "\"", c.getReconnects());
+        }
+        header(out, "mexc_missed_pongs_total", "counter", "PINGs left unanswered past the pong timeout");
+        for (ConnectionMetrics c : connections.values()) {
+            sample(out, "mexc_missed_pongs_total", labels + ",connection=\"" + c.name() + "\"", c.getMissedPongs());
+        }
+        header(out, "mexc_ping_rtt_seconds", "summary", "PING to PONG round-trip time");
+        for (ConnectionMetrics c : connections.values()) {
+            quantiles(out, "mexc_ping_rtt_seconds", labels + ",connection=\"" + c.name() + "\"", c.pingRtt(), 1e-9);
+        }
+
+        if (!states.isEmpty()) {
+            header(out, "mexc_trades_total", "counter", "Trades dispatched per symbol");
+            for (int id = 0; id < registry.size(); id++) {
+                long count = tradeCount(id);
+                if (count > 0) {
+                    sample(out, "mexc_trades_total", labels + ",symbol=\"" + registry.name(id) + "\"", count);
+                }
+            }
+        }
+
+        header(out, "mexc_queue_depth", "gauge", "Trades waiting in the trade ring");
+        sample(out, "mexc_queue_depth", labels, getQueueDepth());
+        header(out, "mexc_dropped_trades_total", "counter", "Trades dropped because the trade ring was full");
+        sample(out, "mexc_dropped_trades_total", labels, getDroppedTrades());
+        if (!arbiters.isEmpty()) {
+            header(out, "mexc_duplicate_trades_total", "counter", "Trade copies dropped from redundant connections");
+            sample(out, "mexc_duplicate_trades_total", labels, getDuplicateTrades());
+            header(out, "mexc_late_trades_total", "counter", "Redundant-symbol trades dropped to keep time order");
+            sample(out, "mexc_late_trades_total", labels, getLateTrades());
+        }
+        header(out, "mexc_decode_seconds", "summary", "Time to decode one frame");
+        quantiles(out, "mexc_decode_seconds", labels, decodeNanos, 1e-9);
+        header(out, "mexc_lag_seconds", "summary", "Exchange trade timestamp to local receive");
+        quantiles(out, "mexc_lag_seconds", labels, lagMillis, 1e-3);
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private static void quantiles(StringBuilder out, String name, String labels, LatencyHistogram histogram,
+                                  double scale) {
+        for (double quantile : QUANTILES) {
+            sample(out, name, labels + ",quantile=\"" + quantile + "\"", histogram.percentile(quantile * 100) * scale);
+        }
+        sample(out, name + "_count", labels, histogram.totalCount());
+    }
+
+    @Override
+    public int getConnections() {
+        return connections.size();
+    }
+
+    @Override
+    public long getMessages() {
+        long total = 0;
+        for (ConnectionMetrics c : connections.values()) {
+            total += c.getMessages();
+        }
+        return total;
+    }
+
+    @Override
+    public long getBytes() {
+        long total = 0;
+        for (ConnectionMetrics c : connections.values()) {
+            total += c.getBytes();
+        }
+        return total;
+    }
+
+    @Override
+    public long getReconnects() {
+        long total = 0;
+        for (ConnectionMetrics c : connections.values()) {
+            total += c.getReconnects();
+        }
+        return total;
+    }
+
+    @Override
+    public long getTrades() {
+        long total = 0;
+        for (TradeRingBuffer ring : queues) {
+            total += ring.consumedCount();
+        }
+        return total - getDuplicateTrades() - getLateTrades();
+    }
+
+    @Override
+    public long getDuplicateTrades() {
+        long total = 0;
+        for (TradeArbiter arbiter : arbiters) {
+            total += arbiter.duplicates();
+        }
+        return total;
+    }
+
+    @Override
+    public long getLateTrades() {
+        long total = 0;
+        for (TradeArbiter arbiter : arbiters) {
+            total += arbiter.late();
+        }
+        return total;
+    }
+
+    @Override
+    public long getQueueDepth() {
+        long total = 0;
+        for (TradeRingBuffer ring : queues) {
+            total += ring.depth();
+        }
+        return total;
+    }
+
+    @Override
+    public long getDroppedTrades() {
+        long total = 0;
+        for (TradeRingBuffer ring : queues) {
+            total += ring.droppedCount();
+        }
+        return total;
+    }
+
+    @Override
+    public long getDecodeP50Nanos() {
+        return decodeNanos.percentile(50);
+    }
+
+    @Override
+    public long getDecodeP99Nanos() {
+        return decodeNanos.percentile(99);
+    }
+
+    @Override
+    public long getDecodeP999Nanos() {
+        return decodeNanos.percentile(99.9);
+    }
+
+    @Override
+    public long getLagP50Millis() {
+        return lagMillis.percentile(50);
+    }
+
+    @Override
+    public long getLagP99Millis() {
+        return lagMillis.percentile(99);
+    }
+
+    @Override
+    public long getTradeCount(String symbol) {
+        int id = registry.idOf(symbol);
+        return id < 0 ? 0 : tradeCount(id);
+    }
+
+    private long tradeCount(int id) {
+        long total = 0;
+        for (SymbolStateTable table : states) {
+            total += table.tradeCount(id);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,34 @@
+package com.mexc;
+
+public interface FeedMetricsMBean {
+
+    int getConnections();
+
+    long getMessages();
+
+    long getBytes();
+
+    long getReconnects();
+
+    long getTrades();
+
+    long getQueueDepth();
+
+    long getDroppedTrades();
+
+    long getDuplicateTrades();
+
+    long getLateTrades();
+
+    long getDecodeP50Nanos();
+
+    long getDecodeP99Nanos();
+
+    long getDecodeP999Nanos();
+
+    long getLagP50Millis();
+
+    long getLagP99Millis();
+
+    long getTradeCount(String symbol);
+}
@@ -0,0 +1,89 @@
+package com.mexc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Records, per symbol, the wall-clock windows during which its connection was
+ * down. Trades with an exchange timestamp inside a gap may have been missed.
+ */
+public class GapTracker {
+
+    private static final int MAX_GAPS_PER_SYMBOL = 64;
+
+    private final Map<String, Long> downSince = new ConcurrentHashMap<>();
+    private final Map<String, Deque<Gap>> gaps = new ConcurrentHashMap<>();
+    private volatile Consumer<Gap> listener = gap -> System.out.println("Gap: " + gap);
+
+    public void setListener(Consumer<Gap> listener) {
+        this.listener = listener;
+    }
+
+    public void disconnected(Collection<String> symbols) {
+        long now = System.currentTimeMillis();
+        for (String symbol : symbols) {
+            downSince.putIfAbsent(symbol, now);
+        }
+    }
+
+    public void resubscribed(Collection<String> symbols) {
+        long now = System.currentTimeMillis();
+        for (String symbol : symbols) {
+            Long from = downSince.remove(symbol);
+            if (from == null) {
+                continue;
+            }
+            Gap gap = new Gap(symbol, from, now);
+            Deque<Gap> history = gaps.computeIfAbsent(symbol, s -> new ArrayDeque<>());
+            synchronized (history) {
+                if (history.size() == MAX_GAPS_PER_SYMBOL) {
+                    history.removeFirst();
+                }
+                history.addLast(gap);
+            }
+            listener.accept(gap);
+        }
+    }
+
+    public boolean isDown(String symbol) {
+        return downSince.containsKey(symbol);
+    }
+
+    public List<Gap> gaps(String symbol) {
+        Deque<Gap> history = gaps.get(symbol);
+        if (history == null) {
+            return Collections.emptyList();
+        }
+        synchronized (history) {
+            return new ArrayList<>(history);
+        }
+    }
+
+    public static final class Gap {
+        public final String symbol;
+        public final long fromMillis;
+        public final long toMillis;
+
+        Gap(String symbol, long fromMillis, long toMillis) {
+            this.symbol = symbol;
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+        }
+
+        public boolean contains(long timestampMillis) {
+            return timestampMillis >= fromMillis && timestampMillis <= toMillis;
+        }
+
+        @Override
+        public String toString() {
+            return symbol + " [" + fromMillis + ", " + toMillis + "] (" + (toMillis - fromMillis) + " ms)";
+        }
+    }
+}
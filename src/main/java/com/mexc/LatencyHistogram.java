@@ -0,0 +1,59 @@
+package com.mexc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Wait-free recording from any number of threads, read as percentiles over the
+ * most recent completed window (at least {@link #WINDOW_NANOS} long).
+ */
+final class LatencyHistogram {
+
+    static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final Recorder recorder = new Recorder(3);
+    private Histogram latest;
+    private Histogram recycled;
+    private long swappedAt = System.nanoTime() - WINDOW_NANOS;
+    private long totalCount;
+
+    void record(long value) {
+        if (value >= 0) {
+            recorder.recordValue(value);
+        }
+    }
+
+    synchronized long totalCount() {
+        swapIfDue();
+        return totalCount;
+    }
+
+    synchronized long windowCount() {
+        swapIfDue();
+        return latest.getTotalCount();
+    }
+
+    synchronized long percentile(double percentile) {
+        swapIfDue();
+        return latest.getValueAtPercentile(percentile);
+    }
+
+    synchronized long max() {
+        swapIfDue();
+        return latest.getMaxValue();
+    }
+
+    private void swapIfDue() {
+        long now = System.nanoTime();
+        if (latest != null && now - swappedAt < WINDOW_NANOS) {
+            return;
+        }
+        Histogram interval = recorder.getIntervalHistogram(recycled);
+        recycled = latest;
+        latest = interval;
+        swappedAt = now;
+        totalCount += interval.getTotalCount();
+    }
+}
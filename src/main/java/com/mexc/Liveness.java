@@ -0,0 +1,130 @@
+package com.mexc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * When to ping and when to give up on a connection. A connection is pinged only
+ * after it has been read-idle for {@code readIdleMillis}; a PING left without
+ * PONG or any other frame for {@code pongTimeoutMillis} counts as missed, and
+ * {@code maxMissedPongs} misses in a row declare the connection dead, so a
+ * silently stalled socket is replaced within a few hundred milliseconds of its
+ * first unanswered PING instead of at TCP timeout.
+ *
+ * <pre>
+ * -Dliveness.idle.ms=1000  -Dliveness.pong.timeout.ms=400  -Dliveness.max.missed=2
+ * </pre>
+ */
+public class Liveness {
+
+    /** What {@link Tracker#tick} asks the connection to do. */
+    public enum Action {
+        NONE,
+        /** Send {@link ControlFrames#PING} now. */
+        PING,
+        /** Close the socket and reconnect. */
+        DEAD
+    }
+
+    /** How often clients call {@link Tracker#tick}. */
+    public static final long TICK_MILLIS = 100;
+
+    private final long readIdleNanos;
+    private final long pongTimeoutNanos;
+    private final int maxMissedPongs;
+
+    public Liveness(long readIdleMillis, long pongTimeoutMillis, int maxMissedPongs) {
+        if (readIdleMillis <= 0 || pongTimeoutMillis <= 0 || maxMissedPongs < 1) {
+            throw new IllegalArgumentException("Invalid liveness: idle=" + readIdleMillis
+                    + ", pongTimeout=" + pongTimeoutMillis + ", maxMissed=" + maxMissedPongs);
+        }
+        this.readIdleNanos = TimeUnit.MILLISECONDS.toNanos(readIdleMillis);
+        this.pongTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(pongTimeoutMillis);
+        this.maxMissedPongs = maxMissedPongs;
+    }
+
+    public static Liveness defaults() {
+        return new Liveness(1000, 400, 2);
+    }
+
+    public static Liveness fromSystemProperties() {
+        return new Liveness(Long.getLong("liveness.idle.ms", 1000),
+                Long.getLong("liveness.pong.timeout.ms", 400),
+                Integer.getInteger("liveness.max.missed", 2));
+    }
+
+    public Tracker newTracker(ConnectionMetrics metrics) {
+        return new Tracker(metrics);
+    }
+
+    /**
+     * The liveness state of one socket. Frames are reported from the I/O thread
+     * and {@link #tick} runs on a timer, which may be another thread.
+     */
+    public final class Tracker {
+        private final ConnectionMetrics metrics;
+        private volatile long lastReadNanos = System.nanoTime();
+        // 0 while no PING is outstanding.
+        private volatile long pingSentNanos;
+        // PINGs sent but not yet answered, including timed-out ones. PONGs carry no id
+        // but come back in order, so while more than one is owed the next answers an old PING.
+        private final AtomicInteger unanswered = new AtomicInteger();
+        private volatile int missed;
+
+        private Tracker(ConnectionMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        /** Any frame at all, data or reply, proves the socket is alive. */
+        public void frameReceived(long nowNanos) {
+            lastReadNanos = nowNanos;
+        }
+
+        public void pongReceived(long nowNanos) {
+            missed = 0;
+            if (unanswered.getAndUpdate(n -> Math.max(0, n - 1)) > 1) {
+                // A late answer to a PING that timed out; timing it against the latest PING would under-report.
+                return;
+            }
+            long sent = pingSentNanos;
+            if (sent != 0) {
+                pingSentNanos = 0;
+                metrics.recordPingRtt(nowNanos - sent);
+            }
+        }
+
+        public Action tick(long nowNanos) {
+            long sent = pingSentNanos;
+            if (sent != 0) {
+                if (nowNanos - sent < pongTimeoutNanos) {
+                    return Action.NONE;
+                }
+                pingSentNanos = 0;
+                if (lastReadNanos - sent > 0) {
+                    // Data kept arriving, so only the PONG is late.
+                    missed = 0;
+                } else {
+                    metrics.missedPong();
+                    if (++missed >= maxMissedPongs) {
+                        return Action.DEAD;
+                    }
+                    return ping(nowNanos);
+                }
+            }
+            if (nowNanos - lastReadNanos >= readIdleNanos) {
+                return ping(nowNanos);
+            }
+            return Action.NONE;
+        }
+
+        private Action ping(long nowNanos) {
+            unanswered.incrementAndGet();
+            pingSentNanos = nowNanos;
+            return Action.PING;
+        }
+
+        public int missedPongs() {
+            return missed;
+        }
+    }
+}
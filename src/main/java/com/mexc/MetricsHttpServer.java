@@ -0,0 +1,49 @@
+package com.mexc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves {@link FeedMetrics} in the Prometheus text exposition format on
+ * {@code GET /metrics}. Enabled by setting {@code -Dmetrics.port}.
+ */
+public final class MetricsHttpServer {
+
+    private MetricsHttpServer() {
+    }
+
+    public static HttpServer start(int port, FeedMetrics metrics) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", exchange -> {
+            StringBuilder body = new StringBuilder(4096);
+            metrics.writePrometheus(body);
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    /** Registers the MBeans and, if {@code -Dmetrics.port} is set, starts the HTTP endpoint. */
+    public static void expose(FeedMetrics metrics) {
+        metrics.registerMBeans();
+        Integer port = Integer.getInteger("metrics.port");
+        if (port == null) {
+            return;
+        }
+        try {
+            start(port, metrics);
+            System.out.println("Prometheus metrics on http://localhost:" + port + "/metrics");
+        } catch (IOException e) {
+            System.err.println("Failed to start metrics endpoint on port " + port + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.mexc;
+
+import java.net.URI;
+
+/**
+ * Exchange endpoints used by every client. Defaults to the live MEXC API and
+ * can be pointed elsewhere, e.g. at {@link MexcSimulator}, with
+ * {@code -Dmexc.rest.url=http://localhost:8080/api/v3/ticker/bookTicker -Dmexc.ws.url=ws://localhost:8080/ws}.
+ */
+public final class MexcEndpoints {
+
+    public static final String DEFAULT_REST_URL = "https://api.mexc.com/api/v3/ticker/bookTicker";
+    public static final String DEFAULT_WS_URL = "wss://wbs.mexc.com/ws";
+
+    private MexcEndpoints() {
+    }
+
+    public static URI bookTicker() {
+        return URI.create(System.getProperty("mexc.rest.url", DEFAULT_REST_URL));
+    }
+
+    public static URI webSocket() {
+        return URI.create(System.getProperty("mexc.ws.url", DEFAULT_WS_URL));
+    }
+}
@@ -0,0 +1,480 @@
+package com.mexc;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.util.AttributeKey;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Local stand-in for the MEXC spot API, for load and soak testing without the
+ * real exchange. It serves a synthetic {@code /api/v3/ticker/bookTicker} and a
+ * {@code /ws} endpoint that speaks SUBSCRIPTION/UNSUBSCRIPTION/PING and pushes
+ * deals frames at a configurable per-symbol rate, with optional bursts, forced
+ * disconnects and slow-consumer eviction. JSON channels get text frames and
+ * protobuf channels binary ones.
+ *
+ * <pre>
+ * mvn exec:java -Dexec.mainClass="com.mexc.MexcSimulator" -Dsim.port=8080 -Dsim.rate=50
+ * </pre>
+ */
+public class MexcSimulator implements AutoCloseable {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String BOOK_TICKER_PATH = "/api/v3/ticker/bookTicker";
+    private static final AttributeKey<Long> UNWRITABLE_SINCE = AttributeKey.valueOf("unwritableSince");
+    private static final int TICK_MILLIS = 10;
+    private static final int MAX_DEALS_PER_FRAME = 4;
+
+    private final Config config;
+    private final String[] symbols;
+    private final double[] prices;
+    private final double[] pending;
+    private final ByteBuf bookTicker;
+    private final Set<Channel>[] subscribers;
+    private final Set<Channel>[] protobufSubscribers;
+    private final Set<Channel> sessions = ConcurrentHashMap.newKeySet();
+    private final EventLoopGroup bossGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("sim-boss"));
+    private final EventLoopGroup workerGroup;
+    private final StringBuilder frame = new StringBuilder(256);
+    private final ProtobufDealsEncoder protobuf = new ProtobufDealsEncoder();
+    private final StringBuilder priceText = new StringBuilder(32);
+    private final StringBuilder quantityText = new StringBuilder(32);
+    private final byte[] dealSides = new byte[MAX_DEALS_PER_FRAME];
+    private final double[] dealQuantities = new double[MAX_DEALS_PER_FRAME];
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder framesDropped = new LongAdder();
+    private final LongAdder forcedDisconnects = new LongAdder();
+    private final LongAdder slowConsumerEvictions = new LongAdder();
+    private Channel serverChannel;
+    private long startedMillis;
+    private long lastDisconnectMillis;
+
+    public static class Config {
+        int port = 8080;
+        int symbols = 2000;
+        double ratePerSymbol = 1.0;
+        int ioThreads = 2;
+        double burstMultiplier = 1.0;
+        long burstIntervalMillis;
+        long burstDurationMillis;
+        long disconnectIntervalMillis;
+        long slowConsumerTimeoutMillis = 5000;
+
+        public Config port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Config symbols(int symbols) {
+            this.symbols = symbols;
+            return this;
+        }
+
+        /** Deals frames per second pushed for each subscribed symbol. */
+        public Config ratePerSymbol(double ratePerSymbol) {
+            this.ratePerSymbol = ratePerSymbol;
+            return this;
+        }
+
+        public Config ioThreads(int ioThreads) {
+            this.ioThreads = ioThreads;
+            return this;
+        }
+
+        /** Every {@code intervalMillis}, multiply the rate by {@code multiplier} for {@code durationMillis}. */
+        public Config burst(double multiplier, long intervalMillis, long durationMillis) {
+            this.burstMultiplier = multiplier;
+            this.burstIntervalMillis = intervalMillis;
+            this.burstDurationMillis = durationMillis;
+            return this;
+        }
+
+        /** Every {@code intervalMillis}, drop one randomly chosen session. 0 disables. */
+        public Config disconnectEvery(long intervalMillis) {
+            this.disconnectIntervalMillis = intervalMillis;
+            return this;
+        }
+
+        /** Close sessions whose socket has not drained for this long. 0 disables. */
+        public Config slowConsumerTimeout(long timeoutMillis) {
+            this.slowConsumerTimeoutMillis = timeoutMillis;
+            return this;
+        }
+
+        static Config fromSystemProperties() {
+            return new Config()
+                    .port(Integer.getInteger("sim.port", 8080))
+                    .symbols(Integer.getInteger("sim.symbols", 2000))
+                    .ratePerSymbol(Double.parseDouble(System.getProperty("sim.rate", "1.0")))
+                    .ioThreads(Integer.getInteger("sim.io.threads", 2))
+                    .burst(Double.parseDouble(System.getProperty("sim.burst.multiplier", "1.0")),
+                            Long.getLong("sim.burst.interval.ms", 0),
+                            Long.getLong("sim.burst.duration.ms", 0))
+                    .disconnectEvery(Long.getLong("sim.disconnect.interval.ms", 0))
+                    .slowConsumerTimeout(Long.getLong("sim.slow.consumer.timeout.ms", 5000));
+        }
+    }
+
+    public MexcSimulator(Config config) {
+        this.config = config;
+        this.symbols = new String[config.symbols];
+        this.prices = new double[config.symbols];
+        this.pending = new double[config.symbols];
+        this.subscribers = channelSets(config.symbols);
+        this.protobufSubscribers = channelSets(config.symbols);
+        this.workerGroup = new NioEventLoopGroup(config.ioThreads, new DefaultThreadFactory("sim-io"));
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder json = new StringBuilder(config.symbols * 100).append('[');
+        for (int i = 0; i < config.symbols; i++) {
+            symbols[i] = "SIM" + i + "USDT";
+            prices[i] = Math.pow(10, random.nextDouble(-4, 5));
+            subscribers[i] = ConcurrentHashMap.newKeySet();
+            protobufSubscribers[i] = ConcurrentHashMap.newKeySet();
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"symbol\":\"").append(symbols[i]).append("\",\"bidPrice\":\"");
+            appendDecimal(json, prices[i] * 0.999).append("\",\"bidQty\":\"100\",\"askPrice\":\"");
+            appendDecimal(json, prices[i] * 1.001).append("\",\"askQty\":\"100\"}");
+        }
+        json.append(']');
+        this.bookTicker = Unpooled.unreleasableBuffer(
+                Unpooled.copiedBuffer(json, CharsetUtil.US_ASCII).asReadOnly());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<Channel>[] channelSets(int symbols) {
+        return (Set<Channel>[]) new Set<?>[symbols];
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config = Config.fromSystemProperties();
+        MexcSimulator simulator = new MexcSimulator(config);
+        simulator.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(simulator::close));
+        System.out.println("MEXC simulator listening on port " + simulator.port() + " with "
+                + config.symbols + " symbols at " + config.ratePerSymbol + " msgs/s per symbol");
+        System.out.println("  -Dmexc.rest.url=http://localhost:" + simulator.port() + BOOK_TICKER_PATH
+                + " -Dmexc.ws.url=ws://localhost:" + simulator.port() + "/ws");
+
+        long lastSent = 0;
+        while (true) {
+            Thread.sleep(5000);
+            long sent = simulator.framesSent.sum();
+            System.out.println("Sessions: " + simulator.sessions.size()
+                    + ", frames/s: " + (sent - lastSent) / 5
+                    + ", dropped: " + simulator.framesDropped.sum()
+                    + ", forced disconnects: " + simulator.forcedDisconnects.sum()
+                    + ", slow consumers evicted: " + simulator.slowConsumerEvictions.sum());
+            lastSent = sent;
+        }
+    }
+
+    public void start() throws InterruptedException {
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(256 * 1024, 1024 * 1024))
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(
+                                new HttpServerCodec(),
+                                new HttpObjectAggregator(65536),
+                                new WebSocketServerProtocolHandler("/ws"),
+                                new RestHandler(),
+                                new SessionHandler());
+                    }
+                });
+        serverChannel = bootstrap.bind(config.port).sync().channel();
+        startedMillis = System.currentTimeMillis();
+        lastDisconnectMillis = startedMillis;
+        // A single loop generates every symbol's deals so each frame is built once.
+        workerGroup.next().scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public int port() {
+        return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+    }
+
+    public List<String> symbols() {
+        return List.of(symbols);
+    }
+
+    public long framesSent() {
+        return framesSent.sum();
+    }
+
+    @Override
+    public void close() {
+        if (serverChannel != null) {
+            serverChannel.close().awaitUninterruptibly();
+        }
+        workerGroup.shutdownGracefully().awaitUninterruptibly();
+        bossGroup.shutdownGracefully().awaitUninterruptibly();
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        injectDisconnect(now);
+        double perTick = config.ratePerSymbol * TICK_MILLIS / 1000.0 * rateMultiplier(now);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int id = 0; id < symbols.length; id++) {
+            Set<Channel> json = subscribers[id];
+            Set<Channel> binary = protobufSubscribers[id];
+            if (json.isEmpty() && binary.isEmpty()) {
+                pending[id] = 0;
+                continue;
+            }
+            pending[id] += perTick;
+            while (pending[id] >= 1) {
+                pending[id] -= 1;
+                prices[id] *= 1 + random.nextGaussian() * 0.0005;
+                int deals = random.nextInt(10) < 8 ? 1 : 1 + random.nextInt(MAX_DEALS_PER_FRAME);
+                for (int i = 0; i < deals; i++) {
+                    dealSides[i] = random.nextBoolean() ? Trade.BUY : Trade.SELL;
+                    dealQuantities[i] = random.nextDouble(0.001, 100);
+                }
+                if (!json.isEmpty()) {
+                    broadcast(json, encodeDeals(id, deals, now), false, now);
+                }
+                if (!binary.isEmpty()) {
+                    broadcast(binary, encodeProtobufDeals(id, deals, now), true, now);
+                }
+            }
+        }
+    }
+
+    private double rateMultiplier(long now) {
+        if (config.burstIntervalMillis <= 0 || config.burstDurationMillis <= 0) {
+            return 1.0;
+        }
+        long phase = (now - startedMillis) % config.burstIntervalMillis;
+        return phase < config.burstDurationMillis ? config.burstMultiplier : 1.0;
+    }
+
+    private void injectDisconnect(long now) {
+        if (config.disconnectIntervalMillis <= 0 || now - lastDisconnectMillis < config.disconnectIntervalMillis) {
+            return;
+        }
+        lastDisconnectMillis = now;
+        List<Channel> open = new ArrayList<>(sessions);
+        if (!open.isEmpty()) {
+            Channel victim = open.get(ThreadLocalRandom.current().nextInt(open.size()));
+            forcedDisconnects.increment();
+            victim.close();
+        }
+    }
+
+    private void broadcast(Set<Channel> channels, ByteBuf payload, boolean binary, long now) {
+        try {
+            for (Channel channel : channels) {
+                send(channel, payload, binary, now);
+            }
+        } finally {
+            payload.release();
+        }
+    }
+
+    private void send(Channel channel, ByteBuf payload, boolean binary, long now) {
+        if (!channel.isWritable()) {
+            framesDropped.increment();
+            Long since = channel.attr(UNWRITABLE_SINCE).setIfAbsent(now);
+            if (since != null && config.slowConsumerTimeoutMillis > 0
+                    && now - since > config.slowConsumerTimeoutMillis) {
+                slowConsumerEvictions.increment();
+                channel.close();
+            }
+            return;
+        }
+        channel.attr(UNWRITABLE_SINCE).set(null);
+        ByteBuf content = payload.retainedDuplicate();
+        channel.writeAndFlush(binary ? new BinaryWebSocketFrame(content) : new TextWebSocketFrame(content),
+                channel.voidPromise());
+        framesSent.increment();
+    }
+
+    private ByteBuf encodeDeals(int id, int deals, long now) {
+        String symbol = symbols[id];
+        StringBuilder sb = frame;
+        sb.setLength(0);
+        sb.append("{\"c\":\"spot@public.deals.v3.api@").append(symbol).append("\",\"d\":{\"deals\":[");
+        for (int i = 0; i < deals; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"S\":").append(dealSides[i]).append(",\"p\":\"");
+            appendDecimal(sb, prices[id]).append("\",\"t\":").append(now).append(",\"v\":\"");
+            appendDecimal(sb, dealQuantities[i]).append("\"}");
+        }
+        sb.append("],\"e\":\"spot@public.deals.v3.api\"},\"s\":\"").append(symbol)
+                .append("\",\"t\":").append(now).append('}');
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(sb.length());
+        ByteBufUtil.writeAscii(buf, sb);
+        return buf;
+    }
+
+    private ByteBuf encodeProtobufDeals(int id, int deals, long now) {
+        protobuf.reset();
+        priceText.setLength(0);
+        appendDecimal(priceText, prices[id]);
+        for (int i = 0; i < deals; i++) {
+            quantityText.setLength(0);
+            protobuf.deal(priceText, appendDecimal(quantityText, dealQuantities[i]), dealSides[i], now);
+        }
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(128 + 48 * deals);
+        protobuf.writeFrame(buf, DealsFormat.PROTOBUF.channelPrefix() + symbols[id], symbols[id], now);
+        return buf;
+    }
+
+    /** Appends {@code value} with eight decimals, without going through String.format. */
+    private static StringBuilder appendDecimal(StringBuilder sb, double value) {
+        long scaled = Math.round(value * 100_000_000d);
+        long fraction = scaled % 100_000_000;
+        sb.append(scaled / 100_000_000).append('.');
+        for (long digit = 10_000_000; digit > fraction && digit > 1; digit /= 10) {
+            sb.append('0');
+        }
+        return sb.append(fraction);
+    }
+
+    private void subscribe(Channel channel, JsonNode params, boolean subscribe) {
+        for (JsonNode param : params) {
+            String name = param.asText();
+            String symbol = name.substring(name.lastIndexOf('@') + 1);
+            int id = symbolId(symbol);
+            String reply;
+            Set<Channel>[] byFormat = name.startsWith(DealsFormat.PROTOBUF.channelPrefix()) ? protobufSubscribers
+                    : name.startsWith(DealsFormat.JSON.channelPrefix()) ? subscribers : null;
+            if (id < 0 || byFormat == null) {
+                reply = "{\"id\":0,\"code\":0,\"msg\":\"Not Subscribed successfully! [" + name + "].  Reason: Blocked!\"}";
+            } else {
+                if (subscribe) {
+                    byFormat[id].add(channel);
+                } else {
+                    byFormat[id].remove(channel);
+                }
+                reply = "{\"id\":0,\"code\":0,\"msg\":\"" + name + "\"}";
+            }
+            channel.writeAndFlush(new TextWebSocketFrame(reply));
+        }
+    }
+
+    private int symbolId(String symbol) {
+        if (!symbol.startsWith("SIM") || !symbol.endsWith("USDT")) {
+            return -1;
+        }
+        try {
+            int id = Integer.parseInt(symbol.substring(3, symbol.length() - 4));
+            return id >= 0 && id < symbols.length ? id : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void unsubscribeAll(Channel channel) {
+        for (int id = 0; id < symbols.length; id++) {
+            subscribers[id].remove(channel);
+            protobufSubscribers[id].remove(channel);
+        }
+    }
+
+    private final class RestHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+            String path = new QueryStringDecoder(request.uri()).path();
+            FullHttpResponse response;
+            if (BOOK_TICKER_PATH.equals(path)) {
+                response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+                        bookTicker.duplicate());
+                response.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
+            } else {
+                response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_FOUND);
+            }
+            response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
+            ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    private final class SessionHandler extends SimpleChannelInboundHandler<TextWebSocketFrame> {
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete) {
+                sessions.add(ctx.channel());
+            }
+            super.userEventTriggered(ctx, evt);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            sessions.remove(ctx.channel());
+            unsubscribeAll(ctx.channel());
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, TextWebSocketFrame msg) throws Exception {
+            JsonNode request = OBJECT_MAPPER.readTree(msg.text());
+            switch (request.path("method").asText()) {
+                case "PING":
+                    ctx.writeAndFlush(new TextWebSocketFrame("{\"id\":0,\"code\":0,\"msg\":\"PONG\"}"));
+                    break;
+                case "SUBSCRIPTION":
+                    subscribe(ctx.channel(), request.path("params"), true);
+                    break;
+                case "UNSUBSCRIPTION":
+                    subscribe(ctx.channel(), request.path("params"), false);
+                    break;
+                default:
+                    ctx.writeAndFlush(new TextWebSocketFrame("{\"id\":0,\"code\":0,\"msg\":\"Unknown method\"}"));
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ctx.close();
+        }
+    }
+}
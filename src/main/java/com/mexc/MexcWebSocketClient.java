@@ -2,76 +2,147 @@ package com.mexc;
 
 import java.net.URI;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.net.http.WebSocket;
 import java.net.http.WebSocket.Listener;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.CopyOnWriteArrayList;
-
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MexcWebSocketClient {
 
-    private static final List<JsonNode> MESSAGES = new CopyOnWriteArrayList<>();
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
-    private static final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+    /**
+     * Where connection work runs: WebSocket callbacks, decoding and subscription
+     * sends. Timers always run on their own dedicated thread.
+     */
+    public enum ExecutionMode {
+        /** One virtual thread per task, so any number of sockets can block without starving each other. */
+        VIRTUAL,
+        /** A fixed pool of platform threads, one per core. */
+        PLATFORM;
 
-    public static void main(String[] args) throws Exception {
-        List<String> symbols = getCurrencyPairs();
-        System.out.println("Total number of symbols in Mexc: " + symbols.size());
-
-        int nSymbols = 100;
-        int batch = 15;
-
-        for (int i = 0; i < nSymbols; i += batch) {
-            List<String> curSymbols = symbols.subList(i, Math.min(i + batch, symbols.size()));
-            executor.execute(() -> threadTrades(curSymbols));
+        /** Virtual by default; platform in the low-latency mode, since virtual threads cannot be pinned. */
+        static ExecutionMode fromSystemProperties() {
+            String fallback = ThreadAffinity.fromSystemProperties().busySpin() ? "platform" : "virtual";
+            return valueOf(System.getProperty("mexc.threads", fallback).toUpperCase(Locale.ROOT));
         }
 
-        executor.execute(MexcWebSocketClient::threadMonitor);
+        ExecutorService newExecutor() {
+            if (this == VIRTUAL) {
+                return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("mexc-ws-", 0).factory());
+            }
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    AFFINITY.ioThreads(Thread.ofPlatform().name("mexc-ws-", 0).daemon().factory()));
+        }
     }
 
-    public static List<String> getCurrencyPairs() throws Exception {
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(new URI("https://api.mexc.com/api/v3/ticker/bookTicker"))
-                .build();
+    static final ThreadAffinity AFFINITY = ThreadAffinity.fromSystemProperties();
+    static final TradeRingBuffer TRADES = new TradeRingBuffer(
+            1 << 16, AFFINITY.waitStrategy(), TradeRingBuffer.OverflowPolicy.DROP);
+    static final ExecutionMode MODE = ExecutionMode.fromSystemProperties();
+    private static final ExecutorService WORKERS = MODE.newExecutor();
+    // Liveness checks, reconnect backoff and rebalancing only schedule non-blocking sends, so one thread serves them all.
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("mexc-timer").daemon().factory());
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder().executor(WORKERS).build();
+    private static URI wsUri = MexcEndpoints.webSocket();
+    private static final DealsFormat FORMAT = DealsFormat.fromSystemProperties();
+    private static final ReconnectPolicy RECONNECT_POLICY = ReconnectPolicy.defaults();
+    private static final Liveness LIVENESS = Liveness.fromSystemProperties();
+    static final GapTracker GAPS = new GapTracker();
+    private static SymbolRegistry registry;
+    private static SymbolStateTable state;
+    static BarAggregator bars;
+    static TradeFanout fanout;
+    private static FeedMetrics metrics;
+    static final List<WebSocketClientListener> LISTENERS = new CopyOnWriteArrayList<>();
 
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-        JsonNode rootNode = OBJECT_MAPPER.readTree(response.body());
+    public static void main(String[] args) throws Exception {
+        SymbolDiscovery discovery = SymbolDiscovery.fromSystemProperties();
+        List<String> symbols = discovery.symbols();
+        System.out.println("Total number of symbols in Mexc: " + symbols.size());
+        registry = SymbolDiscovery.newRegistry(symbols);
+        state = new SymbolStateTable(registry.capacity());
+        metrics = new FeedMetrics("jdk", registry);
+        metrics.bind(TRADES, state);
+        MetricsHttpServer.expose(metrics);
 
-        List<String> symbols = new ArrayList<>();
-        for (JsonNode node : rootNode) {
-            symbols.add(node.get("symbol").asText());
-        }
-        return symbols;
-    }
+        ShardPlanner planner = ShardPlanner.defaults();
+        List<List<String>> shards = planner.plan(symbols);
+        System.out.println("Subscribing " + symbols.size() + " symbols over " + shards.size()
+                + " connections on " + MODE.name().toLowerCase(Locale.ROOT) + " threads, " + AFFINITY);
 
-    public static void threadTrades(List<String> symbols) {
-        try {
-            WebSocketClientListener listener = new WebSocketClientListener(symbols);
-            WebSocket webSocket = HttpClient.newHttpClient().newWebSocketBuilder()
-                    .buildAsync(URI.create("wss://wbs.mexc.com/ws"), listener)
-                    .join();
+        TradeJournal journal = TradeJournal.fromSystemProperties(registry);
+        bars = new BarAggregator(registry.capacity());
+        fanout = new TradeFanout(registry);
+        TradeHandler pipeline = TradeHandler.chain(state, bars, metrics.lagRecorder(), journal, fanout);
+        TradeArbiter arbiter = TradeArbiter.fromSystemProperties(registry, pipeline);
+        if (arbiter != null) {
+            metrics.bind(arbiter);
+            pipeline = arbiter;
+        }
+        TRADES.start(pipeline, AFFINITY.consumerThread("mexc-trades"));
 
-            listener.setWebSocket(webSocket);
-            listener.subscribe();
-        } catch (Exception e) {
-            e.printStackTrace();
+        // Every handshake is in flight at once; a connection that fails keeps retrying on its own.
+        List<CompletableFuture<WebSocket>> handshakes = new ArrayList<>(shards.size());
+        for (List<String> curSymbols : shards) {
+            WebSocketClientListener listener = new WebSocketClientListener(curSymbols);
+            LISTENERS.add(listener);
+            handshakes.add(listener.connect());
+        }
+        // The second copies stay out of LISTENERS, so rebalancing never moves them.
+        List<WebSocketClientListener> redundant = new ArrayList<>();
+        if (arbiter != null) {
+            System.out.println("Subscribing " + arbiter.symbols().size() + " symbols twice: " + arbiter.symbols());
+            for (List<String> curSymbols : planner.plan(arbiter.symbols())) {
+                WebSocketClientListener listener = new WebSocketClientListener(curSymbols);
+                redundant.add(listener);
+                handshakes.add(listener.connect());
+            }
         }
+        long started = System.nanoTime();
+        CompletableFuture.allOf(handshakes.toArray(new CompletableFuture<?>[0])).whenComplete((v, e) -> {
+            long connected = handshakes.stream().filter(f -> !f.isCompletedExceptionally()).count();
+            System.out.println(connected + "/" + handshakes.size() + " connections up in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+        });
+
+        ShardBalancer balancer = new ShardBalancer(planner, LISTENERS, registry, state, 6, 20);
+        TIMER.scheduleAtFixedRate(balancer, 10, 10, TimeUnit.SECONDS);
+        discovery.startPolling((listed, delisted) -> {
+            for (String symbol : listed) {
+                registry.register(symbol);
+            }
+            // Listings fill free slots on live connections; any overflow gets connections of its own.
+            for (List<String> overflow : planner.plan(balancer.listed(listed))) {
+                WebSocketClientListener listener = new WebSocketClientListener(overflow);
+                LISTENERS.add(listener);
+                listener.connect();
+            }
+            balancer.delisted(delisted);
+            ShardBalancer.unsubscribe(redundant, delisted);
+        });
+        new Thread(MexcWebSocketClient::threadMonitor, "mexc-monitor").start();
+    }
+
+    static void init(URI uri, SymbolRegistry symbolRegistry) {
+        wsUri = uri;
+        registry = symbolRegistry;
+        metrics = new FeedMetrics("jdk", symbolRegistry);
     }
 
     public static void threadMonitor() {
         while (true) {
-            System.out.println("Number of messages: " + MESSAGES.size());
-            MESSAGES.clear();
+            System.out.println(metrics.summary());
             try {
                 Thread.sleep(5000);
             } catch (InterruptedException e) {
@@ -80,13 +151,63 @@ public class MexcWebSocketClient {
         }
     }
 
-    static class WebSocketClientListener implements Listener {
+    static class WebSocketClientListener implements Listener, TradeHandler, Shard {
 
         private final List<String> symbols;
-        private WebSocket webSocket;
+        private final DealsDecoder decoder = new DealsDecoder(registry);
+        private final StringBuilder partial = new StringBuilder();
+        private final ProtobufDealsDecoder protobufDecoder = new ProtobufDealsDecoder(registry);
+        private ByteBuffer partialBinary = ByteBuffer.allocate(0);
+        private final ConnectionMetrics connection = metrics.newConnection();
+        private volatile Liveness.Tracker liveness = LIVENESS.newTracker(connection);
+        private final AtomicInteger attempts = new AtomicInteger();
+        private volatile boolean connectedBefore;
+        private volatile WebSocket webSocket;
+        private volatile ScheduledFuture<?> livenessTask;
+        private CompletableFuture<?> lastSend = CompletableFuture.completedFuture(null);
 
         public WebSocketClientListener(List<String> symbols) {
-            this.symbols = symbols;
+            this.symbols = new CopyOnWriteArrayList<>(symbols);
+        }
+
+        public CompletableFuture<WebSocket> connect() {
+            return HTTP_CLIENT.newWebSocketBuilder()
+                    .buildAsync(wsUri, this)
+                    .whenComplete((ws, error) -> {
+                        if (error != null) {
+                            GAPS.disconnected(symbols);
+                            scheduleReconnect();
+                            return;
+                        }
+                        attempts.set(0);
+                        if (connectedBefore) {
+                            connection.reconnected();
+                        }
+                        connectedBefore = true;
+                        setWebSocket(ws);
+                        subscribe();
+                        GAPS.resubscribed(symbols);
+                    });
+        }
+
+        private void scheduleReconnect() {
+            long delay = RECONNECT_POLICY.nextDelayMillis(attempts.getAndIncrement());
+            System.out.println("Reconnecting " + symbols.size() + " symbols in " + delay + " ms");
+            TIMER.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void disconnected(WebSocket closed) {
+            // Ignore late callbacks from a socket that has already been replaced.
+            if (closed != webSocket) {
+                return;
+            }
+            webSocket = null;
+            ScheduledFuture<?> task = livenessTask;
+            if (task != null) {
+                task.cancel(false);
+            }
+            GAPS.disconnected(symbols);
+            scheduleReconnect();
         }
 
         public void setWebSocket(WebSocket webSocket) {
@@ -94,29 +215,71 @@ public class MexcWebSocketClient {
         }
 
         public void subscribe() {
-            List<String> args = new ArrayList<>();
-            for (String symbol : symbols) {
-                args.add("spot@public.deals.v3.api@" + symbol);
+            send(webSocket, "SUBSCRIPTION", symbols);
+            startLivenessChecks();
+        }
+
+        @Override
+        public List<String> symbols() {
+            return symbols;
+        }
+
+        @Override
+        public void subscribe(List<String> added) {
+            symbols.addAll(added);
+            WebSocket ws = webSocket;
+            if (ws != null) {
+                send(ws, "SUBSCRIPTION", added);
+            }
+        }
+
+        @Override
+        public void unsubscribe(List<String> removed) {
+            symbols.removeAll(removed);
+            WebSocket ws = webSocket;
+            if (ws != null) {
+                send(ws, "UNSUBSCRIPTION", removed);
             }
+        }
 
-            String subscribeMessage = OBJECT_MAPPER.createObjectNode()
-                    .put("method", "SUBSCRIPTION")
-                    .set("params", OBJECT_MAPPER.valueToTree(args))
-                    .toString();
+        private void send(WebSocket ws, String method, List<String> subscribed) {
+            for (String message : ControlFrames.subscriptions(method, registry.dealsChannels(subscribed, FORMAT))) {
+                send(ws, message);
+            }
+        }
 
-            webSocket.sendText(subscribeMessage, true);
-            startPingRoutine();
+        /**
+         * WebSocket allows only one outstanding sendText, so pings and
+         * subscription changes from different threads are chained.
+         */
+        private synchronized void send(WebSocket ws, String message) {
+            lastSend = lastSend.handle((r, e) -> null).thenCompose(v -> ws.sendText(message, true));
         }
 
-        private void startPingRoutine() {
-            executor.scheduleAtFixedRate(() -> {
-                if (webSocket != null) {
-                    String pingMessage = OBJECT_MAPPER.createObjectNode()
-                            .put("method", "PING")
-                            .toString();
-                    webSocket.sendText(pingMessage, true);
+        /** Pings only while the socket is read-idle and drops it after consecutive missed PONGs. */
+        private void startLivenessChecks() {
+            // A fresh tracker per socket, so the PONGs the last one missed do not count against this one.
+            Liveness.Tracker tracker = LIVENESS.newTracker(connection);
+            liveness = tracker;
+            livenessTask = TIMER.scheduleAtFixedRate(() -> {
+                WebSocket ws = webSocket;
+                if (ws == null) {
+                    return;
+                }
+                switch (tracker.tick(System.nanoTime())) {
+                    case PING:
+                        send(ws, ControlFrames.PING);
+                        break;
+                    case DEAD:
+                        System.out.println("No PONG after " + tracker.missedPongs() + " PINGs, dropping connection for "
+                                + symbols.size() + " symbols");
+                        disconnected(ws);
+                        ws.abort();
+                        break;
+                    default:
+                        break;
                 }
-            }, 0, 3, TimeUnit.SECONDS);
+            }, Liveness.TICK_MILLIS, Liveness.TICK_MILLIS, TimeUnit.MILLISECONDS);
         }
 
         @Override
@@ -127,20 +290,86 @@ public class MexcWebSocketClient {
 
         @Override
         public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
-            try {
-                JsonNode message = OBJECT_MAPPER.readTree(data.toString());
-                MESSAGES.add(message);
-                System.out.println("New message: " + message);
-            } catch (Exception e) {
-                e.printStackTrace();
+            liveness.frameReceived(System.nanoTime());
+            // Messages split across several callbacks are stitched together first.
+            if (!last) {
+                partial.append(data);
+            } else if (partial.length() == 0) {
+                decode(data);
+            } else {
+                partial.append(data);
+                decode(partial);
+                partial.setLength(0);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+            liveness.frameReceived(System.nanoTime());
+            // Protobuf pushes are decoded straight from the delivered buffer unless they were split.
+            if (!last) {
+                appendBinary(data);
+            } else if (partialBinary.position() == 0) {
+                decodeBinary(data);
+            } else {
+                appendBinary(data);
+                partialBinary.flip();
+                decodeBinary(partialBinary);
+                partialBinary.clear();
             }
             webSocket.request(1);
-            return Listener.super.onText(webSocket, data, last);
+            return null;
+        }
+
+        private void appendBinary(ByteBuffer data) {
+            if (partialBinary.remaining() < data.remaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(partialBinary.capacity() * 2,
+                        partialBinary.position() + data.remaining()));
+                partialBinary.flip();
+                partialBinary = grown.put(partialBinary);
+            }
+            partialBinary.put(data);
+        }
+
+        private void decodeBinary(ByteBuffer message) {
+            connection.messageReceived(message.remaining());
+            long start = System.nanoTime();
+            protobufDecoder.decode(message, this);
+            metrics.recordDecode(System.nanoTime() - start);
+        }
+
+        private void decode(CharSequence message) {
+            // PONGs and acks never reach the decoder or the message counts.
+            if (ControlFrames.isReply(message)) {
+                if (ControlFrames.isPong(message)) {
+                    liveness.pongReceived(System.nanoTime());
+                }
+                return;
+            }
+            connection.messageReceived(message.length());
+            long start = System.nanoTime();
+            decoder.decode(message, this);
+            metrics.recordDecode(System.nanoTime() - start);
+        }
+
+        @Override
+        public void onTrade(Trade trade) {
+            TRADES.publish(trade);
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            System.out.println("WebSocket closed (" + statusCode + " " + reason + ") for symbols: " + symbols);
+            disconnected(webSocket);
+            return Listener.super.onClose(webSocket, statusCode, reason);
         }
 
         @Override
         public void onError(WebSocket webSocket, Throwable error) {
             error.printStackTrace();
+            disconnected(webSocket);
             Listener.super.onError(webSocket, error);
         }
     }
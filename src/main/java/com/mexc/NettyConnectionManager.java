@@ -0,0 +1,258 @@
+package com.mexc;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLException;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
+import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketClientCompressionHandler;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.ssl.SslContext;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+
+/**
+ * Owns the event loop group, SSL context and open channels shared by every
+ * MEXC connection, so that a connection costs a channel rather than a thread pool.
+ */
+public class NettyConnectionManager implements AutoCloseable {
+
+    private final EventLoopGroup group;
+    private final Class<? extends SocketChannel> channelClass;
+    private final SslContext sslCtx;
+    private final ChannelGroup channels = new DefaultChannelGroup("mexc", GlobalEventExecutor.INSTANCE);
+    private final SymbolRegistry registry;
+    private final FeedMetrics metrics;
+    private final ReconnectPolicy reconnectPolicy;
+    private final DealsFormat format;
+    private final NettyTransportProfile profile;
+    private final GapTracker gapTracker = new GapTracker();
+    private final Liveness liveness = Liveness.fromSystemProperties();
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    public NettyConnectionManager(SymbolRegistry registry) throws SSLException {
+        this(registry, new FeedMetrics("netty", registry));
+    }
+
+    public NettyConnectionManager(SymbolRegistry registry, FeedMetrics metrics) throws SSLException {
+        this(registry, metrics, defaultThreads(), ReconnectPolicy.defaults());
+    }
+
+    public NettyConnectionManager(SymbolRegistry registry, FeedMetrics metrics, int nThreads,
+                                  ReconnectPolicy reconnectPolicy) throws SSLException {
+        this(registry, metrics, nThreads, reconnectPolicy, DealsFormat.fromSystemProperties());
+    }
+
+    public NettyConnectionManager(SymbolRegistry registry, FeedMetrics metrics, int nThreads,
+                                  ReconnectPolicy reconnectPolicy, DealsFormat format) throws SSLException {
+        this(registry, metrics, nThreads, reconnectPolicy, format, NettyTransportProfile.fromSystemProperties());
+    }
+
+    public NettyConnectionManager(SymbolRegistry registry, FeedMetrics metrics, int nThreads,
+                                  ReconnectPolicy reconnectPolicy, DealsFormat format,
+                                  NettyTransportProfile profile) throws SSLException {
+        this.registry = registry;
+        this.format = format;
+        this.metrics = metrics;
+        this.reconnectPolicy = reconnectPolicy;
+        this.profile = profile;
+        ThreadAffinity affinity = ThreadAffinity.fromSystemProperties();
+        this.group = profile.newEventLoopGroup(nThreads,
+                affinity.ioThreads(new DefaultThreadFactory("mexc-io", true)), affinity.busySpin());
+        this.channelClass = profile.channelClass();
+        this.sslCtx = profile.newSslContext();
+    }
+
+    static int defaultThreads() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Opens a connection subscribed to the given symbols. The returned future
+     * completes with the channel once the first WebSocket handshake has finished;
+     * whenever the channel drops afterwards it is reopened with backoff and the
+     * symbols are subscribed again.
+     */
+    public Future<Channel> connect(URI uri, List<String> symbols) {
+        Promise<Channel> promise = group.next().newPromise();
+        Connection connection = new Connection(uri, symbols, metrics.newConnection());
+        connections.add(connection);
+        open(connection, 0, promise);
+        return promise;
+    }
+
+    private void open(Connection connection, int attempt, Promise<Channel> firstHandshake) {
+        if (closed) {
+            return;
+        }
+        URI uri = connection.uri;
+        List<String> symbols = connection.symbols;
+        NettyWebSocketClient.WebSocketClientHandler handler = new NettyWebSocketClient.WebSocketClientHandler(
+                uri, symbols, registry, format, metrics, connection.metrics, liveness, profile.maxFrameSize());
+        boolean ssl = "wss".equalsIgnoreCase(uri.getScheme());
+        String host = uri.getHost();
+        int port = uri.getPort() != -1 ? uri.getPort() : ssl ? 443 : 80;
+
+        Bootstrap bootstrap = new Bootstrap();
+        bootstrap.group(group)
+                .channel(channelClass)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        if (ssl) {
+                            ch.pipeline().addLast(sslCtx.newHandler(ch.alloc(), host, port));
+                        }
+                        // Coalesces the flushes of writes made while a read is in progress into one syscall.
+                        ch.pipeline().addFirst(new FlushConsolidationHandler(
+                                FlushConsolidationHandler.DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES, true));
+                        ch.pipeline().addLast(
+                                new HttpClientCodec(),
+                                new HttpObjectAggregator(8192),
+                                WebSocketClientCompressionHandler.INSTANCE,
+                                // Reassembles continuation frames, so the decoders always see whole messages.
+                                new WebSocketFrameAggregator(profile.maxFrameSize()),
+                                handler);
+                    }
+                });
+
+        profile.configure(bootstrap);
+
+        bootstrap.connect(host, port).addListener((ChannelFuture connectFuture) -> {
+            if (!connectFuture.isSuccess()) {
+                firstHandshake.tryFailure(connectFuture.cause());
+                gapTracker.disconnected(symbols);
+                scheduleReconnect(connection, attempt, firstHandshake);
+                return;
+            }
+            Channel channel = connectFuture.channel();
+            channels.add(channel);
+            handler.handshakeFuture().addListener(handshake -> {
+                if (handshake.isSuccess()) {
+                    connection.handler = handler;
+                    firstHandshake.trySuccess(channel);
+                    gapTracker.resubscribed(symbols);
+                    if (connection.connectedBefore) {
+                        connection.metrics.reconnected();
+                    }
+                    connection.connectedBefore = true;
+                } else {
+                    firstHandshake.tryFailure(handshake.cause());
+                    channel.close();
+                }
+            });
+            channel.closeFuture().addListener(f -> {
+                if (connection.handler == handler) {
+                    connection.handler = null;
+                }
+                gapTracker.disconnected(symbols);
+                // A connection that got as far as a handshake starts its backoff over.
+                int nextAttempt = handler.handshakeFuture().isSuccess() ? 0 : attempt;
+                scheduleReconnect(connection, nextAttempt, firstHandshake);
+            });
+        });
+    }
+
+    private void scheduleReconnect(Connection connection, int attempt, Promise<Channel> firstHandshake) {
+        if (closed || group.isShuttingDown()) {
+            return;
+        }
+        long delay = reconnectPolicy.nextDelayMillis(attempt);
+        System.out.println("Reconnecting " + connection.symbols.size() + " symbols in " + delay + " ms (attempt " + (attempt + 1) + ")");
+        group.schedule(() -> open(connection, attempt + 1, firstHandshake), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /** Every connection opened so far, as shards whose subscriptions can be moved at runtime. */
+    public List<? extends Shard> shards() {
+        return Collections.unmodifiableList(connections);
+    }
+
+    public int connectionCount() {
+        return channels.size();
+    }
+
+    public EventLoopGroup group() {
+        return group;
+    }
+
+    public FeedMetrics metrics() {
+        return metrics;
+    }
+
+    public NettyTransportProfile profile() {
+        return profile;
+    }
+
+    public GapTracker gapTracker() {
+        return gapTracker;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        channels.close().awaitUninterruptibly();
+        group.shutdownGracefully().awaitUninterruptibly();
+    }
+
+    /**
+     * A logical connection that survives reconnects. The handler of the current
+     * channel is set once its handshake completes; the handler subscribes the
+     * live symbol list, so symbols added while it is down are picked up then.
+     */
+    private static class Connection implements Shard {
+        final URI uri;
+        final List<String> symbols;
+        final ConnectionMetrics metrics;
+        volatile NettyWebSocketClient.WebSocketClientHandler handler;
+        // Retries before the first handshake are not reconnects.
+        volatile boolean connectedBefore;
+
+        Connection(URI uri, List<String> symbols, ConnectionMetrics metrics) {
+            this.uri = uri;
+            this.symbols = new CopyOnWriteArrayList<>(symbols);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public List<String> symbols() {
+            return symbols;
+        }
+
+        @Override
+        public void subscribe(List<String> added) {
+            symbols.addAll(added);
+            NettyWebSocketClient.WebSocketClientHandler current = handler;
+            if (current != null) {
+                current.send("SUBSCRIPTION", added);
+            }
+        }
+
+        @Override
+        public void unsubscribe(List<String> removed) {
+            symbols.removeAll(removed);
+            NettyWebSocketClient.WebSocketClientHandler current = handler;
+            if (current != null) {
+                current.send("UNSUBSCRIPTION", removed);
+            }
+        }
+    }
+}
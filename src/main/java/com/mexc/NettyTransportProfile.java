@@ -0,0 +1,183 @@
+package com.mexc;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadFactory;
+
+import javax.net.ssl.SSLException;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SelectStrategy;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringSocketChannel;
+
+/**
+ * Transport, buffer and TLS settings for {@link NettyConnectionManager}.
+ *
+ * <ul>
+ *   <li>{@link #baseline()}: NIO, Netty's default allocator and receive sizing, JDK TLS.</li>
+ *   <li>{@link #throughput()}: the best native transport the host supports, pooled
+ *       direct buffers, a large socket receive buffer with adaptive read sizing, and
+ *       OpenSSL through netty-tcnative when it loads.</li>
+ * </ul>
+ *
+ * {@link #fromSystemProperties()} starts from {@code -Dnetty.profile} (default
+ * {@code throughput}) and lets {@code -Dnetty.transport}, {@code -Dnetty.rcvbuf} and
+ * {@code -Dnetty.max.frame} override single settings. In the low-latency mode of
+ * {@link ThreadAffinity} the throughput profile prefers epoll, whose event loops busy-poll.
+ */
+public class NettyTransportProfile {
+
+    public enum Transport {
+        IO_URING, EPOLL, NIO;
+
+        boolean isAvailable() {
+            switch (this) {
+                case IO_URING:
+                    return IOUring.isAvailable();
+                case EPOLL:
+                    return Epoll.isAvailable();
+                default:
+                    return true;
+            }
+        }
+
+        /** The first of the given transports that this host supports. */
+        static Transport best(Transport... preferred) {
+            for (Transport transport : preferred) {
+                if (transport.isAvailable()) {
+                    return transport;
+                }
+            }
+            return NIO;
+        }
+    }
+
+    private final String name;
+    private final Transport transport;
+    private final ByteBufAllocator allocator;
+    private final int receiveBufferSize;
+    private final AdaptiveRecvByteBufAllocator recvAllocator;
+    private final int maxFrameSize;
+    private final boolean openSsl;
+
+    /**
+     * @param receiveBufferSize SO_RCVBUF in bytes, or 0 to leave it to the kernel
+     * @param recvAllocator     read sizing, or null for Netty's default
+     * @param maxFrameSize      largest WebSocket message accepted, after aggregating continuation frames
+     */
+    public NettyTransportProfile(String name, Transport transport, ByteBufAllocator allocator, int receiveBufferSize,
+                                 AdaptiveRecvByteBufAllocator recvAllocator, int maxFrameSize, boolean openSsl) {
+        this.name = name;
+        this.transport = Transport.best(transport, Transport.NIO);
+        this.allocator = allocator;
+        this.receiveBufferSize = receiveBufferSize;
+        this.recvAllocator = recvAllocator;
+        this.maxFrameSize = maxFrameSize;
+        this.openSsl = openSsl && OpenSsl.isAvailable();
+    }
+
+    public static NettyTransportProfile baseline() {
+        return new NettyTransportProfile("baseline", Transport.NIO, ByteBufAllocator.DEFAULT, 0, null,
+                1 << 20, false);
+    }
+
+    public static NettyTransportProfile throughput() {
+        return new NettyTransportProfile("throughput", Transport.best(Transport.IO_URING, Transport.EPOLL),
+                new PooledByteBufAllocator(true), 1 << 20,
+                new AdaptiveRecvByteBufAllocator(4096, 65536, 1 << 20), 1 << 20, true);
+    }
+
+    public static NettyTransportProfile fromSystemProperties() {
+        String profile = System.getProperty("netty.profile", "throughput").toLowerCase(Locale.ROOT);
+        NettyTransportProfile base = "baseline".equals(profile) ? baseline() : throughput();
+        String transport = System.getProperty("netty.transport");
+        Transport preferred = base.transport;
+        if (ThreadAffinity.fromSystemProperties().busySpin() && base.transport != Transport.NIO) {
+            // Only epoll can busy-poll, so it wins over io_uring in the low-latency mode.
+            preferred = Transport.best(Transport.EPOLL, base.transport);
+        }
+        return new NettyTransportProfile(profile,
+                transport == null ? preferred : Transport.valueOf(transport.toUpperCase(Locale.ROOT)),
+                base.allocator,
+                Integer.getInteger("netty.rcvbuf", base.receiveBufferSize),
+                base.recvAllocator,
+                Integer.getInteger("netty.max.frame", base.maxFrameSize),
+                base.openSsl);
+    }
+
+    /** With {@code busyPoll}, epoll event loops spin on {@code epoll_wait} instead of sleeping in it; other transports ignore it. */
+    EventLoopGroup newEventLoopGroup(int nThreads, ThreadFactory threadFactory, boolean busyPoll) {
+        switch (transport) {
+            case IO_URING:
+                return new IOUringEventLoopGroup(nThreads, threadFactory);
+            case EPOLL:
+                if (busyPoll) {
+                    return new EpollEventLoopGroup(nThreads, threadFactory,
+                            () -> (selectSupplier, hasTasks) -> SelectStrategy.BUSY_WAIT);
+                }
+                return new EpollEventLoopGroup(nThreads, threadFactory);
+            default:
+                return new NioEventLoopGroup(nThreads, threadFactory);
+        }
+    }
+
+    Class<? extends SocketChannel> channelClass() {
+        switch (transport) {
+            case IO_URING:
+                return IOUringSocketChannel.class;
+            case EPOLL:
+                return EpollSocketChannel.class;
+            default:
+                return NioSocketChannel.class;
+        }
+    }
+
+    void configure(Bootstrap bootstrap) {
+        bootstrap.option(ChannelOption.ALLOCATOR, allocator);
+        if (receiveBufferSize > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+        if (recvAllocator != null) {
+            bootstrap.option(ChannelOption.RCVBUF_ALLOCATOR, recvAllocator);
+        }
+    }
+
+    SslContext newSslContext() throws SSLException {
+        return SslContextBuilder.forClient()
+                .sslProvider(openSsl ? SslProvider.OPENSSL : SslProvider.JDK)
+                .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                .build();
+    }
+
+    public Transport transport() {
+        return transport;
+    }
+
+    public int maxFrameSize() {
+        return maxFrameSize;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + transport.name().toLowerCase(Locale.ROOT) + ", "
+                + (allocator instanceof PooledByteBufAllocator ? "pooled" : "default") + " buffers, "
+                + (openSsl ? "OpenSSL" : "JDK TLS") + ")";
+    }
+}
@@ -1,138 +1,98 @@
 package com.mexc;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPromise;
-import io.netty.channel.EventLoopGroup;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
-import io.netty.handler.codec.http.HttpClientCodec;
-import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketClientHandshaker;
 import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
 import io.netty.handler.codec.http.websocketx.WebSocketVersion;
-import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.timeout.IdleStateEvent;
-import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketClientCompressionHandler;
-import io.netty.handler.ssl.SslContext;
-import io.netty.handler.ssl.SslContextBuilder;
-import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.util.CharsetUtil;
 import io.netty.handler.codec.http.websocketx.WebSocketHandshakeException;
 
 public class NettyWebSocketClient {
 
-    private static final List<String> MESSAGES = new CopyOnWriteArrayList<>();
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    static final ThreadAffinity AFFINITY = ThreadAffinity.fromSystemProperties();
+    static final TradeRingBuffer TRADES = new TradeRingBuffer(
+            1 << 16, AFFINITY.waitStrategy(), TradeRingBuffer.OverflowPolicy.DROP);
 
     public static void main(String[] args) throws Exception {
-        List<String> symbols = getCurrencyPairs();
+        SymbolDiscovery discovery = SymbolDiscovery.fromSystemProperties();
+        List<String> symbols = discovery.symbols();
         System.out.println("Total number of symbols in MEXC: " + symbols.size());
 
-        int nSymbols = 100;
-        int batch = 15;
-
-        for (int i = 0; i < nSymbols; i += batch) {
-            List<String> curSymbols = symbols.subList(i, Math.min(i + batch, symbols.size()));
-            new Thread(() -> threadTrades(curSymbols)).start();
+        URI uri = MexcEndpoints.webSocket();
+        SymbolRegistry registry = SymbolDiscovery.newRegistry(symbols);
+        SymbolStateTable state = new SymbolStateTable(registry.capacity());
+        FeedMetrics metrics = new FeedMetrics("netty", registry);
+        metrics.bind(TRADES, state);
+        MetricsHttpServer.expose(metrics);
+        NettyConnectionManager manager = new NettyConnectionManager(registry, metrics);
+        System.out.println("Netty transport: " + manager.profile() + ", threads: " + AFFINITY);
+        Runtime.getRuntime().addShutdownHook(new Thread(manager::close));
+
+        ShardPlanner planner = ShardPlanner.defaults();
+        List<List<String>> shards = planner.plan(symbols);
+        System.out.println("Subscribing " + symbols.size() + " symbols over " + shards.size() + " connections");
+        for (List<String> curSymbols : shards) {
+            manager.connect(uri, curSymbols).addListener(f -> {
+                if (!f.isSuccess()) {
+                    System.err.println("Failed to connect for symbols " + curSymbols + ": " + f.cause());
+                }
+            });
         }
 
-        new Thread(NettyWebSocketClient::threadMonitor).start();
-    }
-
-    public static List<String> getCurrencyPairs() throws Exception {
-        String url = "https://api.mexc.com/api/v3/ticker/bookTicker";
-        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
-        conn.setRequestMethod("GET");
-
-        int responseCode = conn.getResponseCode();
-        if (responseCode == HttpURLConnection.HTTP_OK) {
-            BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-            String inputLine;
-            StringBuilder content = new StringBuilder();
-            while ((inputLine = in.readLine()) != null) {
-                content.append(inputLine);
+        TradeJournal journal = TradeJournal.fromSystemProperties(registry);
+        BarAggregator bars = new BarAggregator(registry.capacity());
+        TradeFanout fanout = new TradeFanout(registry);
+        TradeHandler pipeline = TradeHandler.chain(state, bars, metrics.lagRecorder(), journal, fanout);
+        TradeArbiter arbiter = TradeArbiter.fromSystemProperties(registry, pipeline);
+        List<Shard> redundantShards = new ArrayList<>();
+        if (arbiter != null) {
+            // The second copies get their own event loop and stay out of rebalancing.
+            NettyConnectionManager redundant = new NettyConnectionManager(registry, metrics, 1, ReconnectPolicy.defaults());
+            Runtime.getRuntime().addShutdownHook(new Thread(redundant::close));
+            System.out.println("Subscribing " + arbiter.symbols().size() + " symbols twice: " + arbiter.symbols());
+            for (List<String> curSymbols : planner.plan(arbiter.symbols())) {
+                redundant.connect(uri, curSymbols);
             }
-            in.close();
-
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode rootNode = objectMapper.readTree(content.toString());
-
-            List<String> symbols = new ArrayList<>();
-            for (JsonNode node : rootNode) {
-                String symbol = node.get("symbol").asText();
-                symbols.add(symbol);
-            }
-            return symbols;
-        } else {
-            throw new RuntimeException("Failed to get currency pairs: HTTP error code : " + responseCode);
+            redundantShards.addAll(redundant.shards());
+            metrics.bind(arbiter);
+            pipeline = arbiter;
         }
-    }
-
-    public static void threadTrades(List<String> symbols) {
-        try {
-            URI uri = new URI("wss://wbs.mexc.com/ws");
-            EventLoopGroup group = new NioEventLoopGroup();
-            final SslContext sslCtx = SslContextBuilder.forClient()
-                    .trustManager(InsecureTrustManagerFactory.INSTANCE).build();
-            try {
-                final WebSocketClientHandler handler = new WebSocketClientHandler(uri, symbols);
-
-                Bootstrap bootstrap = new Bootstrap();
-                bootstrap.group(group)
-                        .channel(NioSocketChannel.class)
-                        .option(ChannelOption.SO_KEEPALIVE, true)
-                        .option(ChannelOption.TCP_NODELAY, true)
-                        // .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 10000)
-                        .handler(new ChannelInitializer<SocketChannel>() {
-                            @Override
-                            protected void initChannel(SocketChannel ch) {
-                                ch.pipeline().addLast(
-                                        sslCtx.newHandler(ch.alloc(), uri.getHost(), 443),
-                                        new HttpClientCodec(),
-                                        new HttpObjectAggregator(8192),
-                                        WebSocketClientCompressionHandler.INSTANCE,
-                                        handler,
-                                        new IdleStateHandler(0, 0, 3, TimeUnit.SECONDS));
-                            }
-                        });
-                System.out.println(uri.getPort());
-                Channel channel = bootstrap.connect(uri.getHost(), 443).sync().channel();
-                handler.handshakeFuture().sync();
-            } finally {
-                group.shutdownGracefully();
+        TRADES.start(pipeline, AFFINITY.consumerThread("mexc-trades"));
+        ShardBalancer balancer = new ShardBalancer(planner, manager.shards(), registry, state, 6, 20);
+        manager.group().scheduleAtFixedRate(balancer, 10, 10, TimeUnit.SECONDS);
+        discovery.startPolling((listed, delisted) -> {
+            for (String symbol : listed) {
+                registry.register(symbol);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+            // Listings fill free slots on live connections; any overflow gets connections of its own.
+            for (List<String> overflow : planner.plan(balancer.listed(listed))) {
+                manager.connect(uri, overflow);
+            }
+            balancer.delisted(delisted);
+            ShardBalancer.unsubscribe(redundantShards, delisted);
+        });
+        new Thread(() -> threadMonitor(metrics), "mexc-monitor").start();
     }
 
-    public static void threadMonitor() {
+    public static void threadMonitor(FeedMetrics metrics) {
         while (true) {
-            System.out.println("Number of messages: " + MESSAGES.size());
-            MESSAGES.clear();
+            System.out.println(metrics.summary());
             try {
                 Thread.sleep(5000);
             } catch (InterruptedException e) {
@@ -141,15 +101,33 @@ public class NettyWebSocketClient {
         }
     }
 
-    static class WebSocketClientHandler extends SimpleChannelInboundHandler<TextWebSocketFrame> {
+    static class WebSocketClientHandler extends SimpleChannelInboundHandler<Object> implements TradeHandler {
         private final WebSocketClientHandshaker handshaker;
         private ChannelPromise handshakeFuture;
+        private Channel channel;
         private final List<String> symbols;
-
-        WebSocketClientHandler(URI uri, List<String> symbols) {
+        private final SymbolRegistry registry;
+        private final DealsFormat format;
+        private final DealsDecoder decoder;
+        private final ProtobufDealsDecoder protobufDecoder;
+        private final FeedMetrics metrics;
+        private final ConnectionMetrics connection;
+        private final Liveness.Tracker liveness;
+        private ScheduledFuture<?> livenessTask;
+
+        WebSocketClientHandler(URI uri, List<String> symbols, SymbolRegistry registry, DealsFormat format,
+                               FeedMetrics metrics, ConnectionMetrics connection, Liveness liveness,
+                               int maxFramePayloadLength) {
             this.symbols = symbols;
+            this.registry = registry;
+            this.format = format;
+            this.metrics = metrics;
+            this.connection = connection;
+            this.liveness = liveness.newTracker(connection);
+            this.decoder = new DealsDecoder(registry);
+            this.protobufDecoder = new ProtobufDealsDecoder(registry);
             this.handshaker = WebSocketClientHandshakerFactory.newHandshaker(
-                    uri, WebSocketVersion.V13, null, true, new DefaultHttpHeaders());
+                    uri, WebSocketVersion.V13, null, true, new DefaultHttpHeaders(), maxFramePayloadLength);
         }
 
         public ChannelFuture handshakeFuture() {
@@ -159,21 +137,24 @@ public class NettyWebSocketClient {
         @Override
         public void handlerAdded(ChannelHandlerContext ctx) {
             handshakeFuture = ctx.newPromise();
+            channel = ctx.channel();
         }
 
         @Override
         public void channelActive(ChannelHandlerContext ctx) {
             handshaker.handshake(ctx.channel());
-            subscribe(ctx, symbols);
         }
 
         @Override
         public void channelInactive(ChannelHandlerContext ctx) {
+            if (livenessTask != null) {
+                livenessTask.cancel(false);
+            }
             System.out.println("WebSocket Client disconnected!");
         }
 
         @Override
-        public void channelRead0(ChannelHandlerContext ctx, TextWebSocketFrame msg) {
+        public void channelRead0(ChannelHandlerContext ctx, Object msg) {
 
             Channel ch = ctx.channel();
             if (!handshaker.isHandshakeComplete()) {
@@ -181,6 +162,10 @@ public class NettyWebSocketClient {
                     handshaker.finishHandshake(ch, (FullHttpResponse) msg);
                     System.out.println("WebSocket Client connected!");
                     handshakeFuture.setSuccess();
+                    send("SUBSCRIPTION", symbols);
+                    liveness.frameReceived(System.nanoTime());
+                    livenessTask = ctx.executor().scheduleAtFixedRate(() -> checkLiveness(ctx),
+                            Liveness.TICK_MILLIS, Liveness.TICK_MILLIS, TimeUnit.MILLISECONDS);
                 } catch (WebSocketHandshakeException e) {
                     System.out.println("WebSocket Client failed to connect");
                     handshakeFuture.setFailure(e);
@@ -195,70 +180,80 @@ public class NettyWebSocketClient {
                                 ", content=" + response.content().toString(CharsetUtil.UTF_8) + ')');
             }
 
-            String message = msg.text();
-            try {
-                Object res = OBJECT_MAPPER.readValue(message, Object.class);
-                MESSAGES.add(res.toString());
-                System.out.println("New message: " + res);
-            } catch (Exception e) {
-                e.printStackTrace();
+            long now = System.nanoTime();
+            liveness.frameReceived(now);
+            if (msg instanceof CloseWebSocketFrame) {
+                ch.close();
+                return;
             }
-        }
-
-        @Override
-        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-            cause.printStackTrace();
-            ctx.close();
-        }
-
-        public void sendPing(ChannelHandlerContext ctx) {
-            try {
-                String pingMessage = OBJECT_MAPPER.writeValueAsString(new PingMessage("PING"));
-                ctx.channel().writeAndFlush(new TextWebSocketFrame(pingMessage));
-            } catch (Exception e) {
-                e.printStackTrace();
+            if (msg instanceof BinaryWebSocketFrame) {
+                // Protobuf pushes are walked in the pooled frame buffer; nothing is copied.
+                ByteBuf content = ((BinaryWebSocketFrame) msg).content();
+                connection.messageReceived(content.readableBytes());
+                long start = System.nanoTime();
+                protobufDecoder.decode(content, this);
+                metrics.recordDecode(System.nanoTime() - start);
+                return;
+            }
+            if (!(msg instanceof TextWebSocketFrame)) {
+                return;
             }
-        }
 
-        public void subscribe(ChannelHandlerContext ctx, List<String> symbols) {
-            try {
-                List<String> args = new ArrayList<>();
-                for (String symbol : symbols) {
-                    args.add("spot@public.deals.v3.api@" + symbol);
+            ByteBuf content = ((TextWebSocketFrame) msg).content();
+            // PONGs and acks never reach the decoder or the message counts.
+            if (ControlFrames.isReply(content)) {
+                if (ControlFrames.isPong(content)) {
+                    liveness.pongReceived(now);
                 }
-                SubscriptionMessage subscriptionMessage = new SubscriptionMessage("SUBSCRIPTION", args);
-                String message = OBJECT_MAPPER.writeValueAsString(subscriptionMessage);
-                ctx.channel().writeAndFlush(new TextWebSocketFrame(message));
-            } catch (Exception e) {
-                e.printStackTrace();
+                return;
             }
+            connection.messageReceived(content.readableBytes());
+            long start = System.nanoTime();
+            decoder.decode(content, this);
+            metrics.recordDecode(System.nanoTime() - start);
         }
 
         @Override
-        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
-            if (evt instanceof IdleStateEvent) {
-                sendPing(ctx);
-            } else {
-                super.userEventTriggered(ctx, evt);
-            }
+        public void onTrade(Trade trade) {
+            TRADES.publish(trade);
         }
 
-        static class PingMessage {
-            public String method;
-
-            public PingMessage(String method) {
-                this.method = method;
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            cause.printStackTrace();
+            if (!handshakeFuture.isDone()) {
+                handshakeFuture.setFailure(cause);
             }
+            ctx.close();
         }
 
-        static class SubscriptionMessage {
-            public String method;
-            public List<String> params;
-
-            public SubscriptionMessage(String method, List<String> params) {
-                this.method = method;
-                this.params = params;
+        private void checkLiveness(ChannelHandlerContext ctx) {
+            switch (liveness.tick(System.nanoTime())) {
+                case PING:
+                    ctx.writeAndFlush(ControlFrames.ping(), ctx.voidPromise());
+                    break;
+                case DEAD:
+                    System.out.println("No PONG after " + liveness.missedPongs() + " PINGs, dropping connection for "
+                            + symbols.size() + " symbols");
+                    ctx.close();
+                    break;
+                default:
+                    break;
             }
         }
+
+        /**
+         * Sends a SUBSCRIPTION or UNSUBSCRIPTION for the symbols' deals channels,
+         * batched into as few frames as the server allows and flushed once. Safe from any thread.
+         */
+        public void send(String method, List<String> symbols) {
+            List<String> channels = registry.dealsChannels(symbols, format);
+            channel.eventLoop().execute(() -> {
+                for (TextWebSocketFrame frame : ControlFrames.subscriptionFrames(channel.alloc(), method, channels)) {
+                    channel.write(frame, channel.voidPromise());
+                }
+                channel.flush();
+            });
+        }
     }
 }
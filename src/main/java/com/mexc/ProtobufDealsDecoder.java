@@ -0,0 +1,295 @@
+package com.mexc;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Decoder for MEXC's protobuf deals pushes ({@code spot@public.aggre.deals.v3.api.pb@100ms@SYMBOL}
+ * and {@code spot@public.deals.v3.api.pb@SYMBOL}), which arrive as binary frames:
+ *
+ * <pre>
+ * message PushDataV3ApiWrapper {
+ *   string channel = 1;
+ *   oneof body { PublicDealsV3Api publicDeals = 301; PublicAggreDealsV3Api publicAggreDeals = 314; ... }
+ *   optional string symbol = 3;
+ *   optional int64 sendTime = 6;
+ * }
+ * message PublicAggreDealsV3Api { repeated Item deals = 1; string eventType = 2; }
+ * message Item { string price = 1; string quantity = 2; int32 tradeType = 3; int64 time = 4; }
+ * </pre>
+ *
+ * The wire format is walked directly in the pooled buffer, so like
+ * {@link DealsDecoder} it neither copies the frame nor allocates, and produces
+ * the same {@link Trade} model. Items are buffered until the whole body has been
+ * read, so a malformed frame hands out no trades at all. An instance is not
+ * thread-safe; use one per connection.
+ */
+public class ProtobufDealsDecoder {
+
+    static final int WRAPPER_CHANNEL = 1;
+    static final int WRAPPER_SYMBOL = 3;
+    static final int WRAPPER_SEND_TIME = 6;
+    static final int WRAPPER_PUBLIC_DEALS = 301;
+    static final int WRAPPER_PUBLIC_AGGRE_DEALS = 314;
+    static final int DEALS_ITEM = 1;
+    static final int DEALS_EVENT_TYPE = 2;
+    static final int ITEM_PRICE = 1;
+    static final int ITEM_QUANTITY = 2;
+    static final int ITEM_TRADE_TYPE = 3;
+    static final int ITEM_TIME = 4;
+
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+    static final int FIXED32 = 5;
+
+    private static final DealsDecoder.MalformedFrameException MALFORMED = new DealsDecoder.MalformedFrameException();
+
+    private final SymbolRegistry symbols;
+    private final Trade trade = new Trade();
+    private final DealsDecoder.ByteBufInput byteBufInput = new DealsDecoder.ByteBufInput();
+    private final DealsDecoder.ByteBufferInput byteBufferInput = new DealsDecoder.ByteBufferInput();
+
+    private double[] prices = new double[16];
+    private double[] quantities = new double[16];
+    private long[] timestamps = new long[16];
+    private byte[] sides = new byte[16];
+    private int count;
+
+    private DealsDecoder.Input in;
+    private int pos;
+    private int end;
+    // Start of the last length-delimited field read by readLength().
+    private int fieldStart;
+
+    public ProtobufDealsDecoder(SymbolRegistry symbols) {
+        this.symbols = symbols;
+    }
+
+    /** Decodes the frame and returns the number of trades handed to the handler, or {@link DealsDecoder#NOT_DEALS}. */
+    public int decode(ByteBuf frame, TradeHandler handler) {
+        byteBufInput.reset(frame);
+        try {
+            return decode(byteBufInput, handler);
+        } finally {
+            byteBufInput.reset(null);
+        }
+    }
+
+    public int decode(ByteBuffer frame, TradeHandler handler) {
+        byteBufferInput.reset(frame);
+        try {
+            return decode(byteBufferInput, handler);
+        } finally {
+            byteBufferInput.reset(null);
+        }
+    }
+
+    private int decode(DealsDecoder.Input input, TradeHandler handler) {
+        long receivedNanos = System.nanoTime();
+        in = input;
+        pos = 0;
+        end = input.length();
+        int bodyStart = -1;
+        int bodyEnd = -1;
+        int symbolStart = -1;
+        int symbolEnd = -1;
+        int channelStart = -1;
+        int channelEnd = -1;
+        int symbolId = -1;
+        try {
+            // The body, symbol and channel may come in any order, so find them first.
+            while (pos < end) {
+                long tag = readVarint();
+                int field = (int) (tag >>> 3);
+                int type = (int) tag & 7;
+                if (type != LENGTH_DELIMITED) {
+                    skip(type);
+                    continue;
+                }
+                int length = readLength();
+                if (field == WRAPPER_PUBLIC_DEALS || field == WRAPPER_PUBLIC_AGGRE_DEALS) {
+                    bodyStart = fieldStart;
+                    bodyEnd = fieldStart + length;
+                } else if (field == WRAPPER_SYMBOL) {
+                    symbolStart = fieldStart;
+                    symbolEnd = fieldStart + length;
+                } else if (field == WRAPPER_CHANNEL) {
+                    channelStart = fieldStart;
+                    channelEnd = fieldStart + length;
+                }
+            }
+            if (bodyStart < 0) {
+                return DealsDecoder.NOT_DEALS;
+            }
+
+            if (symbolStart >= 0) {
+                symbolId = symbols.lookup(in, symbolStart, symbolEnd);
+            } else if (channelStart >= 0) {
+                int at = channelEnd - 1;
+                while (at > channelStart && in.at(at) != '@') {
+                    at--;
+                }
+                symbolId = symbols.lookup(in, at + 1, channelEnd);
+            }
+            if (symbolId < 0) {
+                return 0;
+            }
+
+            pos = bodyStart;
+            count = 0;
+            while (pos < bodyEnd) {
+                long tag = readVarint();
+                if ((int) (tag >>> 3) == DEALS_ITEM && ((int) tag & 7) == LENGTH_DELIMITED) {
+                    readLength();
+                    int itemEnd = pos;
+                    pos = fieldStart;
+                    readItem(itemEnd);
+                } else {
+                    skip((int) tag & 7);
+                }
+            }
+        } catch (DealsDecoder.MalformedFrameException e) {
+            return DealsDecoder.NOT_DEALS;
+        }
+
+        Trade t = trade;
+        for (int i = 0; i < count; i++) {
+            t.symbolId = symbolId;
+            t.price = prices[i];
+            t.quantity = quantities[i];
+            t.side = sides[i];
+            t.timestamp = timestamps[i];
+            t.receivedNanos = receivedNanos;
+            handler.onTrade(t);
+        }
+        return count;
+    }
+
+    private void readItem(int itemEnd) {
+        ensureCapacity();
+        int i = count;
+        prices[i] = 0;
+        quantities[i] = 0;
+        sides[i] = 0;
+        timestamps[i] = 0;
+        while (pos < itemEnd) {
+            long tag = readVarint();
+            int field = (int) (tag >>> 3);
+            int type = (int) tag & 7;
+            if (type == LENGTH_DELIMITED && (field == ITEM_PRICE || field == ITEM_QUANTITY)) {
+                int length = readLength();
+                double value = parseDecimal(fieldStart, fieldStart + length);
+                if (field == ITEM_PRICE) {
+                    prices[i] = value;
+                } else {
+                    quantities[i] = value;
+                }
+            } else if (type == VARINT && field == ITEM_TRADE_TYPE) {
+                sides[i] = (byte) readVarint();
+            } else if (type == VARINT && field == ITEM_TIME) {
+                timestamps[i] = readVarint();
+            } else {
+                skip(type);
+            }
+        }
+        if (pos != itemEnd) {
+            throw MALFORMED;
+        }
+        count++;
+    }
+
+    private void ensureCapacity() {
+        if (count < prices.length) {
+            return;
+        }
+        int size = prices.length * 2;
+        prices = Arrays.copyOf(prices, size);
+        quantities = Arrays.copyOf(quantities, size);
+        timestamps = Arrays.copyOf(timestamps, size);
+        sides = Arrays.copyOf(sides, size);
+    }
+
+    private long readVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos >= end) {
+                throw MALFORMED;
+            }
+            int b = in.at(pos++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+        throw MALFORMED;
+    }
+
+    /** Reads a length prefix, records where the field starts in {@link #fieldStart} and skips past it. */
+    private int readLength() {
+        long length = readVarint();
+        if (length < 0 || length > end - pos) {
+            throw MALFORMED;
+        }
+        fieldStart = pos;
+        pos += (int) length;
+        return (int) length;
+    }
+
+    private void skip(int type) {
+        switch (type) {
+            case VARINT:
+                readVarint();
+                break;
+            case FIXED64:
+                pos += 8;
+                break;
+            case LENGTH_DELIMITED:
+                readLength();
+                break;
+            case FIXED32:
+                pos += 4;
+                break;
+            default:
+                throw MALFORMED;
+        }
+        if (pos > end) {
+            throw MALFORMED;
+        }
+    }
+
+    /** Parses a plain decimal string such as {@code 27500.01} or {@code -0.5}. */
+    private double parseDecimal(int start, int stop) {
+        int i = start;
+        boolean negative = i < stop && in.at(i) == '-';
+        if (negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (; i < stop; i++) {
+            int c = in.at(i);
+            if (c >= '0' && c <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    if (fraction) {
+                        scale++;
+                    }
+                } else if (!fraction) {
+                    scale--;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                throw MALFORMED;
+            }
+        }
+        double value = DealsDecoder.scaled(mantissa, scale);
+        return negative ? -value : value;
+    }
+}
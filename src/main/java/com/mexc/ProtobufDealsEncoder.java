@@ -0,0 +1,98 @@
+package com.mexc;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import static com.mexc.ProtobufDealsDecoder.DEALS_EVENT_TYPE;
+import static com.mexc.ProtobufDealsDecoder.DEALS_ITEM;
+import static com.mexc.ProtobufDealsDecoder.ITEM_PRICE;
+import static com.mexc.ProtobufDealsDecoder.ITEM_QUANTITY;
+import static com.mexc.ProtobufDealsDecoder.ITEM_TIME;
+import static com.mexc.ProtobufDealsDecoder.ITEM_TRADE_TYPE;
+import static com.mexc.ProtobufDealsDecoder.LENGTH_DELIMITED;
+import static com.mexc.ProtobufDealsDecoder.VARINT;
+import static com.mexc.ProtobufDealsDecoder.WRAPPER_CHANNEL;
+import static com.mexc.ProtobufDealsDecoder.WRAPPER_PUBLIC_AGGRE_DEALS;
+import static com.mexc.ProtobufDealsDecoder.WRAPPER_SEND_TIME;
+import static com.mexc.ProtobufDealsDecoder.WRAPPER_SYMBOL;
+
+/**
+ * Writes {@code PushDataV3ApiWrapper} deals frames in the layout read by
+ * {@link ProtobufDealsDecoder}. Used by the simulator and the benchmarks;
+ * an instance is reused frame after frame and is not thread-safe.
+ */
+public class ProtobufDealsEncoder {
+
+    private static final String EVENT_TYPE = "spot@public.aggre.deals.v3.api.pb@100ms";
+
+    private final ByteBuf body = Unpooled.buffer(256);
+    private int deals;
+
+    /** Starts a new frame. */
+    public ProtobufDealsEncoder reset() {
+        body.clear();
+        deals = 0;
+        return this;
+    }
+
+    public ProtobufDealsEncoder deal(CharSequence price, CharSequence quantity, int side, long time) {
+        int length = 1 + varintSize(price.length()) + price.length()
+                + 1 + varintSize(quantity.length()) + quantity.length()
+                + 1 + varintSize(side)
+                + 1 + varintSize(time);
+        tag(body, DEALS_ITEM, LENGTH_DELIMITED);
+        writeVarint(body, length);
+        ascii(body, ITEM_PRICE, price);
+        ascii(body, ITEM_QUANTITY, quantity);
+        tag(body, ITEM_TRADE_TYPE, VARINT);
+        writeVarint(body, side);
+        tag(body, ITEM_TIME, VARINT);
+        writeVarint(body, time);
+        deals++;
+        return this;
+    }
+
+    public int deals() {
+        return deals;
+    }
+
+    /** Appends the wrapped frame holding every deal added since {@link #reset()} to {@code out}. */
+    public void writeFrame(ByteBuf out, String channel, String symbol, long sendTime) {
+        ascii(out, WRAPPER_CHANNEL, channel);
+        ascii(out, WRAPPER_SYMBOL, symbol);
+        tag(out, WRAPPER_SEND_TIME, VARINT);
+        writeVarint(out, sendTime);
+        tag(out, WRAPPER_PUBLIC_AGGRE_DEALS, LENGTH_DELIMITED);
+        writeVarint(out, body.readableBytes() + 1 + varintSize(EVENT_TYPE.length()) + EVENT_TYPE.length());
+        out.writeBytes(body, body.readerIndex(), body.readableBytes());
+        ascii(out, DEALS_EVENT_TYPE, EVENT_TYPE);
+    }
+
+    private static void ascii(ByteBuf out, int field, CharSequence value) {
+        tag(out, field, LENGTH_DELIMITED);
+        writeVarint(out, value.length());
+        ByteBufUtil.writeAscii(out, value);
+    }
+
+    private static void tag(ByteBuf out, int field, int type) {
+        writeVarint(out, (long) field << 3 | type);
+    }
+
+    private static void writeVarint(ByteBuf out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
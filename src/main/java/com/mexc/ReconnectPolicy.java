@@ -0,0 +1,36 @@
+package com.mexc;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with full jitter: attempt n waits a random delay in
+ * [0, min(max, base * multiplier^n)], so that connections dropped together
+ * do not all reconnect at the same instant.
+ */
+public class ReconnectPolicy {
+
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final double multiplier;
+
+    public ReconnectPolicy(long baseDelayMillis, long maxDelayMillis, double multiplier) {
+        if (baseDelayMillis <= 0 || maxDelayMillis < baseDelayMillis || multiplier < 1.0) {
+            throw new IllegalArgumentException("Invalid backoff: base=" + baseDelayMillis
+                    + ", max=" + maxDelayMillis + ", multiplier=" + multiplier);
+        }
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.multiplier = multiplier;
+    }
+
+    public static ReconnectPolicy defaults() {
+        return new ReconnectPolicy(250, 30_000, 2.0);
+    }
+
+    public long nextDelayMillis(int attempt) {
+        double ceiling = baseDelayMillis * Math.pow(multiplier, Math.max(0, attempt));
+        long cap = (long) Math.min(maxDelayMillis, ceiling);
+        // Never reconnect in a tight loop, even when the jitter rolls zero.
+        return Math.max(baseDelayMillis / 2, ThreadLocalRandom.current().nextLong(cap + 1));
+    }
+}
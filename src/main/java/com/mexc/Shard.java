@@ -0,0 +1,19 @@
+package com.mexc;
+
+import java.util.List;
+
+/**
+ * One WebSocket connection whose subscription set can change while it is live.
+ * Implementations resubscribe the current {@link #symbols()} after every reconnect.
+ */
+public interface Shard {
+
+    /** Symbols currently assigned to this connection. */
+    List<String> symbols();
+
+    /** Adds the symbols and, if the connection is up, sends a SUBSCRIPTION for them. */
+    void subscribe(List<String> symbols);
+
+    /** Removes the symbols and, if the connection is up, sends an UNSUBSCRIPTION for them. */
+    void unsubscribe(List<String> symbols);
+}
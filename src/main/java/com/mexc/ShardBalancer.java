@@ -0,0 +1,139 @@
+package com.mexc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Periodically samples per-symbol trade rates from the state table and moves
+ * subscriptions from saturated connections to quiet ones. Schedule {@link #run()}
+ * on the client's own timer; every call takes one rate sample, and every
+ * {@code rebalanceEvery} calls applies the moves proposed by the planner.
+ *
+ * <p>A moved symbol is subscribed on its new connection before it is
+ * unsubscribed from the old one, so a move can duplicate trades briefly but
+ * never loses them.
+ */
+public class ShardBalancer implements Runnable {
+
+    private static final double SMOOTHING = 0.3;
+
+    private final ShardPlanner planner;
+    private final List<? extends Shard> shards;
+    private final SymbolRegistry registry;
+    private final SymbolStateTable state;
+    private final int rebalanceEvery;
+    private final int maxMoves;
+
+    private final long[] lastCount;
+    private final double[] rates;
+    private long lastSampleNanos;
+    private int samples;
+
+    public ShardBalancer(ShardPlanner planner, List<? extends Shard> shards, SymbolRegistry registry,
+                         SymbolStateTable state, int rebalanceEvery, int maxMoves) {
+        this.planner = planner;
+        this.shards = shards;
+        this.registry = registry;
+        this.state = state;
+        this.rebalanceEvery = rebalanceEvery;
+        this.maxMoves = maxMoves;
+        this.lastCount = new long[registry.capacity()];
+        this.rates = new double[registry.capacity()];
+    }
+
+    @Override
+    public synchronized void run() {
+        try {
+            sample();
+            if (samples > 1 && samples % rebalanceEvery == 0) {
+                rebalance();
+            }
+        } catch (RuntimeException e) {
+            // Keep the periodic task alive; the next tick retries.
+            e.printStackTrace();
+        }
+    }
+
+    private void sample() {
+        long now = System.nanoTime();
+        double seconds = (now - lastSampleNanos) / 1e9;
+        for (int id = 0; id < rates.length; id++) {
+            long count = state.tradeCount(id);
+            if (samples > 0) {
+                double instant = (count - lastCount[id]) / seconds;
+                rates[id] = samples == 1 ? instant : SMOOTHING * instant + (1 - SMOOTHING) * rates[id];
+            }
+            lastCount[id] = count;
+        }
+        lastSampleNanos = now;
+        samples++;
+    }
+
+    /** Smoothed trades per second for the symbol, or 0 if it is unknown. */
+    public double rate(String symbol) {
+        int id = registry.idOf(symbol);
+        return id < 0 ? 0 : rates[id];
+    }
+
+    /**
+     * Subscribes newly listed symbols, each on the connection with the most free
+     * slots. Symbols that find no room are returned; they need a new connection.
+     */
+    public synchronized List<String> listed(List<String> symbols) {
+        List<String> unplaced = new ArrayList<>();
+        List<List<String>> current = new ArrayList<>(shards.size());
+        for (Shard shard : shards) {
+            current.add(new ArrayList<>(shard.symbols()));
+        }
+        Map<Integer, List<String>> added = new HashMap<>();
+        for (String symbol : symbols) {
+            int to = planner.place(current);
+            if (to < 0) {
+                unplaced.add(symbol);
+                continue;
+            }
+            current.get(to).add(symbol);
+            added.computeIfAbsent(to, i -> new ArrayList<>()).add(symbol);
+        }
+        added.forEach((i, batch) -> shards.get(i).subscribe(batch));
+        return unplaced;
+    }
+
+    /** Unsubscribes delisted symbols from whichever connections carry them. */
+    public synchronized void delisted(List<String> symbols) {
+        unsubscribe(shards, symbols);
+    }
+
+    /** Unsubscribes the symbols from whichever of the shards carry them; also used for shards kept out of rebalancing. */
+    public static void unsubscribe(List<? extends Shard> shards, List<String> symbols) {
+        for (Shard shard : shards) {
+            List<String> removed = new ArrayList<>(symbols);
+            removed.retainAll(shard.symbols());
+            if (!removed.isEmpty()) {
+                shard.unsubscribe(removed);
+            }
+        }
+    }
+
+    void rebalance() {
+        List<List<String>> current = new ArrayList<>(shards.size());
+        for (Shard shard : shards) {
+            current.add(shard.symbols());
+        }
+        List<ShardPlanner.Move> moves = planner.rebalance(current, this::rate, maxMoves);
+        if (moves.isEmpty()) {
+            return;
+        }
+        Map<Integer, List<String>> added = new HashMap<>();
+        Map<Integer, List<String>> removed = new HashMap<>();
+        for (ShardPlanner.Move move : moves) {
+            added.computeIfAbsent(move.to, i -> new ArrayList<>()).add(move.symbol);
+            removed.computeIfAbsent(move.from, i -> new ArrayList<>()).add(move.symbol);
+        }
+        added.forEach((i, symbols) -> shards.get(i).subscribe(symbols));
+        removed.forEach((i, symbols) -> shards.get(i).unsubscribe(symbols));
+        System.out.println("Rebalanced " + moves.size() + " symbols: " + moves);
+    }
+}
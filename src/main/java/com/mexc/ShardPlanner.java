@@ -0,0 +1,183 @@
+package com.mexc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Assigns symbols to connections within MEXC's per-connection subscription
+ * limit, balancing the summed message rate of each connection. New connections
+ * are only filled to {@code fill} of the limit so that the balancer has room
+ * to move hot symbols onto quiet connections later.
+ */
+public class ShardPlanner {
+
+    /** MEXC accepts at most 30 subscriptions on one WebSocket connection. */
+    public static final int MEXC_MAX_SUBSCRIPTIONS = 30;
+
+    private final int maxPerConnection;
+    private final int targetPerConnection;
+    private final double tolerance;
+
+    /**
+     * @param maxPerConnection hard cap on subscriptions per connection
+     * @param fill             fraction of the cap used by the initial plan
+     * @param tolerance        how far above the mean a connection's rate may be before symbols are moved off it
+     */
+    public ShardPlanner(int maxPerConnection, double fill, double tolerance) {
+        if (maxPerConnection < 1 || fill <= 0 || fill > 1 || tolerance < 0) {
+            throw new IllegalArgumentException("Invalid sharding: max=" + maxPerConnection
+                    + ", fill=" + fill + ", tolerance=" + tolerance);
+        }
+        this.maxPerConnection = maxPerConnection;
+        this.targetPerConnection = Math.max(1, (int) (maxPerConnection * fill));
+        this.tolerance = tolerance;
+    }
+
+    public static ShardPlanner defaults() {
+        return new ShardPlanner(Integer.getInteger("mexc.ws.max.subscriptions", MEXC_MAX_SUBSCRIPTIONS), 0.8, 0.25);
+    }
+
+    public int connectionsFor(int symbols) {
+        return Math.max(1, (symbols + targetPerConnection - 1) / targetPerConnection);
+    }
+
+    /** Splits the symbols evenly by count. */
+    public List<List<String>> plan(List<String> symbols) {
+        return plan(symbols, symbol -> 0.0);
+    }
+
+    /**
+     * Splits the symbols over {@link #connectionsFor} connections, placing the
+     * heaviest symbols first, each on the lightest connection that still has room.
+     */
+    public List<List<String>> plan(List<String> symbols, ToDoubleFunction<String> rate) {
+        if (symbols.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int connections = connectionsFor(symbols.size());
+        int perConnection = (symbols.size() + connections - 1) / connections;
+        List<List<String>> shards = new ArrayList<>(connections);
+        double[] load = new double[connections];
+        for (int i = 0; i < connections; i++) {
+            shards.add(new ArrayList<>(perConnection));
+        }
+
+        List<String> ordered = new ArrayList<>(symbols);
+        ordered.sort(Comparator.comparingDouble(rate).reversed());
+        for (String symbol : ordered) {
+            int lightest = -1;
+            for (int i = 0; i < connections; i++) {
+                if (shards.get(i).size() < perConnection
+                        && (lightest < 0 || load[i] < load[lightest]
+                        || load[i] == load[lightest] && shards.get(i).size() < shards.get(lightest).size())) {
+                    lightest = i;
+                }
+            }
+            shards.get(lightest).add(symbol);
+            load[lightest] += rate.applyAsDouble(symbol);
+        }
+        return shards;
+    }
+
+    /**
+     * The connection a newly listed symbol should join: the one with the fewest
+     * subscriptions still under the limit, or -1 if every connection is full.
+     */
+    public int place(List<? extends Collection<String>> shards) {
+        int emptiest = -1;
+        for (int i = 0; i < shards.size(); i++) {
+            int size = shards.get(i).size();
+            if (size < maxPerConnection && (emptiest < 0 || size < shards.get(emptiest).size())) {
+                emptiest = i;
+            }
+        }
+        return emptiest;
+    }
+
+    /**
+     * Proposes up to {@code maxMoves} single-symbol moves from the most loaded
+     * connection to the least loaded one with a free subscription slot. Each move
+     * strictly lowers the larger of the two loads and carries at least half the
+     * tolerance of the mean rate; planning stops once no connection exceeds the
+     * mean by more than the tolerance.
+     */
+    public List<Move> rebalance(List<? extends Collection<String>> shards, ToDoubleFunction<String> rate,
+                                int maxMoves) {
+        int n = shards.size();
+        List<List<String>> working = new ArrayList<>(n);
+        double[] load = new double[n];
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            List<String> symbols = new ArrayList<>(shards.get(i));
+            working.add(symbols);
+            for (String symbol : symbols) {
+                load[i] += rate.applyAsDouble(symbol);
+            }
+            total += load[i];
+        }
+        List<Move> moves = new ArrayList<>();
+        if (n < 2 || total <= 0) {
+            return moves;
+        }
+        double mean = total / n;
+        double ceiling = mean * (1 + tolerance);
+        // Shaving a trickle off a connection that is hot because of one busy symbol is not worth the churn.
+        double minRate = mean * tolerance / 2;
+
+        while (moves.size() < maxMoves) {
+            int hottest = 0;
+            int coolest = -1;
+            for (int i = 0; i < n; i++) {
+                if (load[i] > load[hottest]) {
+                    hottest = i;
+                }
+                if (working.get(i).size() < maxPerConnection && (coolest < 0 || load[i] < load[coolest])) {
+                    coolest = i;
+                }
+            }
+            if (load[hottest] <= ceiling || coolest < 0 || coolest == hottest) {
+                break;
+            }
+            // The best single move brings the two loads closest to their midpoint.
+            double gap = load[hottest] - load[coolest];
+            String best = null;
+            double bestRate = 0;
+            for (String symbol : working.get(hottest)) {
+                double r = rate.applyAsDouble(symbol);
+                if (r >= minRate && r < gap && Math.abs(gap / 2 - r) < Math.abs(gap / 2 - bestRate)) {
+                    best = symbol;
+                    bestRate = r;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            working.get(hottest).remove(best);
+            working.get(coolest).add(best);
+            load[hottest] -= bestRate;
+            load[coolest] += bestRate;
+            moves.add(new Move(best, hottest, coolest));
+        }
+        return moves;
+    }
+
+    public static class Move {
+        public final String symbol;
+        public final int from;
+        public final int to;
+
+        Move(String symbol, int from, int to) {
+            this.symbol = symbol;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public String toString() {
+            return symbol + " " + from + "->" + to;
+        }
+    }
+}
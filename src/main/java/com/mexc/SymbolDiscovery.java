@@ -0,0 +1,204 @@
+package com.mexc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Finds the symbols to subscribe. The bookTicker response is parsed as a stream
+ * of tokens straight off the socket, keeping only the symbol names. The result
+ * is cached on disk, so a restart within the TTL needs no REST call. A background
+ * poll reports listings and delistings, so clients can subscribe and unsubscribe
+ * incrementally instead of restarting.
+ *
+ * <pre>
+ * -Ddiscovery.cache=/tmp/mexc-symbols.txt  -Ddiscovery.ttl.seconds=3600  -Ddiscovery.poll.seconds=300
+ * </pre>
+ */
+public class SymbolDiscovery implements AutoCloseable {
+
+    /** Receives the difference between two polls; runs on the discovery thread. */
+    public interface Listener {
+        void symbolsChanged(List<String> listed, List<String> delisted);
+    }
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final URI endpoint;
+    private final Path cacheFile;
+    private final Duration ttl;
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private ScheduledExecutorService poller;
+    private Set<String> known = new LinkedHashSet<>();
+
+    public SymbolDiscovery(URI endpoint, Path cacheFile, Duration ttl) {
+        this.endpoint = endpoint;
+        this.cacheFile = cacheFile;
+        this.ttl = ttl;
+    }
+
+    public static SymbolDiscovery fromSystemProperties() {
+        String cache = System.getProperty("discovery.cache",
+                Paths.get(System.getProperty("java.io.tmpdir"), "mexc-symbols.txt").toString());
+        return new SymbolDiscovery(MexcEndpoints.bookTicker(), Paths.get(cache),
+                Duration.ofSeconds(Long.getLong("discovery.ttl.seconds", 3600)));
+    }
+
+    /** The cached symbols if the cache is younger than the TTL, otherwise a fresh listing. */
+    public synchronized List<String> symbols() throws IOException, InterruptedException {
+        List<String> symbols = null;
+        if (Files.isRegularFile(cacheFile)) {
+            long age = System.currentTimeMillis() - Files.getLastModifiedTime(cacheFile).toMillis();
+            if (age < ttl.toMillis()) {
+                symbols = Files.readAllLines(cacheFile, StandardCharsets.US_ASCII);
+                System.out.println("Loaded " + symbols.size() + " symbols from " + cacheFile + " (" + age / 1000 + " s old)");
+            }
+        }
+        if (symbols == null || symbols.isEmpty()) {
+            try {
+                symbols = fetch();
+                writeCache(symbols);
+            } catch (IOException e) {
+                if (!Files.isRegularFile(cacheFile)) {
+                    throw e;
+                }
+                // An expired listing still beats not starting at all.
+                System.err.println("Symbol discovery failed, using the expired cache: " + e);
+                symbols = Files.readAllLines(cacheFile, StandardCharsets.US_ASCII);
+            }
+        }
+        known = new LinkedHashSet<>(symbols);
+        return symbols;
+    }
+
+    /** Downloads the listing, reading only the {@code symbol} fields of the bookTicker array. */
+    public List<String> fetch() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(endpoint).timeout(Duration.ofSeconds(30)).build();
+        HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("Failed to get currency pairs: HTTP error code : " + response.statusCode());
+            }
+            return parse(body);
+        }
+    }
+
+    static List<String> parse(InputStream in) throws IOException {
+        List<String> symbols = new ArrayList<>();
+        try (JsonParser parser = JSON.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array from bookTicker");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    if (parser.nextToken() == JsonToken.VALUE_STRING && "symbol".equals(field)) {
+                        symbols.add(parser.getText());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+        return symbols;
+    }
+
+    private void writeCache(List<String> symbols) throws IOException {
+        Path parent = cacheFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, "mexc-symbols", ".tmp");
+        Files.write(temp, symbols, StandardCharsets.US_ASCII);
+        Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Polls every {@code period} on a daemon thread and reports changes since the previous listing. */
+    public synchronized void startPolling(Duration period, Listener listener) {
+        if (poller != null) {
+            throw new IllegalStateException("Already polling");
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("mexc-discovery").daemon().factory());
+        long millis = period.toMillis();
+        poller.scheduleWithFixedDelay(() -> poll(listener), millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Starts polling at {@code -Ddiscovery.poll.seconds} (default 300); 0 disables it. */
+    public void startPolling(Listener listener) {
+        long seconds = Long.getLong("discovery.poll.seconds", 300);
+        if (seconds > 0) {
+            startPolling(Duration.ofSeconds(seconds), listener);
+        }
+    }
+
+    private void poll(Listener listener) {
+        try {
+            List<String> current = fetch();
+            if (current.isEmpty()) {
+                // An empty listing is an exchange hiccup, not a mass delisting.
+                return;
+            }
+            List<String> listed = new ArrayList<>();
+            List<String> delisted = new ArrayList<>();
+            Set<String> next = new LinkedHashSet<>(current);
+            synchronized (this) {
+                for (String symbol : next) {
+                    if (!known.contains(symbol)) {
+                        listed.add(symbol);
+                    }
+                }
+                for (String symbol : known) {
+                    if (!next.contains(symbol)) {
+                        delisted.add(symbol);
+                    }
+                }
+                known = next;
+                writeCache(current);
+            }
+            if (!listed.isEmpty() || !delisted.isEmpty()) {
+                System.out.println("Symbols listed: " + listed + ", delisted: " + delisted);
+                listener.symbolsChanged(listed, delisted);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Keep polling; the next round retries.
+            System.err.println("Symbol discovery poll failed: " + e);
+        }
+    }
+
+    /**
+     * A registry for the listing with room for symbols listed while running:
+     * a quarter more, and at least 256.
+     */
+    public static SymbolRegistry newRegistry(List<String> symbols) {
+        return new SymbolRegistry(symbols, symbols.size() + Math.max(256, symbols.size() / 4));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.mexc;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dense int ids for every MEXC symbol, assigned at startup from the bookTicker
+ * listing. The data path only ever carries the id; names and channel strings
+ * are built here once and looked up by index.
+ *
+ * <p>A registry created with spare {@link #capacity()} also takes symbols listed
+ * while running through {@link #register}. Ids are never reused or removed, so
+ * per-symbol arrays sized to the capacity stay valid; readers on any thread see
+ * a registered symbol once its hash slot is published.
+ */
+public class SymbolRegistry {
+
+    public static final String DEALS_CHANNEL_PREFIX = DealsFormat.JSON.channelPrefix();
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final String[] names;
+    private final String[] dealsChannels;
+    private final String[] protobufChannels;
+    private final int[] slots;
+    private final int mask;
+    private volatile int size;
+
+    public SymbolRegistry(List<String> symbols) {
+        this(symbols, symbols.size());
+    }
+
+    /** A registry with room for {@code capacity - symbols.size()} symbols listed later. */
+    public SymbolRegistry(List<String> symbols, int capacity) {
+        capacity = Math.max(capacity, symbols.size());
+        this.names = new String[capacity];
+        this.dealsChannels = new String[capacity];
+        this.protobufChannels = new String[capacity];
+        int tableSize = Integer.highestOneBit(Math.max(4, capacity * 2) - 1) << 1;
+        this.slots = new int[tableSize];
+        this.mask = tableSize - 1;
+        for (String symbol : symbols) {
+            if (add(symbol) < 0) {
+                throw new IllegalArgumentException("Duplicate symbol: " + symbol);
+            }
+        }
+    }
+
+    /** Assigns the next id to a newly listed symbol and returns it; returns its existing id if already known. */
+    public synchronized int register(String symbol) {
+        int id = idOf(symbol);
+        if (id >= 0) {
+            return id;
+        }
+        if (size == names.length) {
+            throw new IllegalStateException("Symbol registry is full (" + names.length + "), cannot add " + symbol);
+        }
+        return add(symbol);
+    }
+
+    // Returns -1 for a duplicate. Slots are published last, so a reader that finds one sees the names behind it.
+    private int add(String name) {
+        int id = size;
+        int h = 0;
+        for (int i = 0; i < name.length(); i++) {
+            h = 31 * h + name.charAt(i);
+        }
+        int slot = mix(h) & mask;
+        while (slots[slot] != 0) {
+            if (names[slots[slot] - 1].equals(name)) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        names[id] = name;
+        dealsChannels[id] = DEALS_CHANNEL_PREFIX + name;
+        protobufChannels[id] = DealsFormat.PROTOBUF.channelPrefix() + name;
+        SLOTS.setRelease(slots, slot, id + 1);
+        size = id + 1;
+        return id;
+    }
+
+    /** Symbols registered so far; ids run from 0 to {@code size() - 1}. */
+    public int size() {
+        return size;
+    }
+
+    /** The most symbols this registry can hold; size per-symbol arrays with this. */
+    public int capacity() {
+        return names.length;
+    }
+
+    /** Every registered symbol, in id order. */
+    public List<String> names() {
+        int count = size;
+        List<String> list = new ArrayList<>(count);
+        for (int id = 0; id < count; id++) {
+            list.add(names[id]);
+        }
+        return list;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public String dealsChannel(int id) {
+        return dealsChannels[id];
+    }
+
+    /** JSON deals channel names for the given symbols, skipping any that are not listed. */
+    public List<String> dealsChannels(List<String> symbols) {
+        return dealsChannels(symbols, DealsFormat.JSON);
+    }
+
+    /** Deals channel names in the given format, skipping symbols that are not listed. */
+    public List<String> dealsChannels(List<String> symbols, DealsFormat format) {
+        String[] byId = format == DealsFormat.PROTOBUF ? protobufChannels : dealsChannels;
+        List<String> channels = new ArrayList<>(symbols.size());
+        for (String symbol : symbols) {
+            int id = idOf(symbol);
+            if (id >= 0) {
+                channels.add(byId[id]);
+            }
+        }
+        return channels;
+    }
+
+    /** Returns the symbol's id, or -1 if it is not listed. */
+    public int idOf(String symbol) {
+        int h = 0;
+        for (int i = 0; i < symbol.length(); i++) {
+            h = 31 * h + symbol.charAt(i);
+        }
+        for (int slot = mix(h) & mask, entry; (entry = (int) SLOTS.getAcquire(slots, slot)) != 0; slot = (slot + 1) & mask) {
+            if (names[entry - 1].equals(symbol)) {
+                return entry - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Looks up the symbol spelled by {@code in[start, end)} without materializing it. */
+    int lookup(DealsDecoder.Input in, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + in.at(i);
+        }
+        int length = end - start;
+        for (int slot = mix(h) & mask, entry; (entry = (int) SLOTS.getAcquire(slots, slot)) != 0; slot = (slot + 1) & mask) {
+            String name = names[entry - 1];
+            if (name.length() == length && matches(name, in, start)) {
+                return entry - 1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(String name, DealsDecoder.Input in, int start) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != in.at(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+}
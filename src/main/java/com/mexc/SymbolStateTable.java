@@ -0,0 +1,59 @@
+package com.mexc;
+
+/**
+ * Latest per-symbol trade state held in primitive arrays indexed by symbol id.
+ * Written by a single thread (the trade ring's consumer). The arrays are plain
+ * and unsynchronised, so reads from other threads are racy and best-effort:
+ * they may see stale values, fields of different trades mixed together, or
+ * (for the longs and doubles) torn values. That suits monitoring, not trading.
+ */
+public class SymbolStateTable implements TradeHandler {
+
+    private final double[] lastPrice;
+    private final double[] lastQuantity;
+    private final long[] lastTimestamp;
+    private final double[] volume;
+    private final long[] tradeCount;
+
+    public SymbolStateTable(int symbols) {
+        this.lastPrice = new double[symbols];
+        this.lastQuantity = new double[symbols];
+        this.lastTimestamp = new long[symbols];
+        this.volume = new double[symbols];
+        this.tradeCount = new long[symbols];
+    }
+
+    @Override
+    public void onTrade(Trade trade) {
+        int id = trade.symbolId;
+        lastPrice[id] = trade.price;
+        lastQuantity[id] = trade.quantity;
+        lastTimestamp[id] = trade.timestamp;
+        volume[id] += trade.quantity;
+        tradeCount[id]++;
+    }
+
+    public int size() {
+        return tradeCount.length;
+    }
+
+    public double lastPrice(int id) {
+        return lastPrice[id];
+    }
+
+    public double lastQuantity(int id) {
+        return lastQuantity[id];
+    }
+
+    public long lastTimestamp(int id) {
+        return lastTimestamp[id];
+    }
+
+    public double volume(int id) {
+        return volume[id];
+    }
+
+    public long tradeCount(int id) {
+        return tradeCount[id];
+    }
+}
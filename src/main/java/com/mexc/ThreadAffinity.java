@@ -0,0 +1,154 @@
+package com.mexc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.openhft.affinity.Affinity;
+
+/**
+ * Where the client's hot threads run. In the default mode the OS schedules
+ * them freely and idle trade consumers back off to short parks. The low-latency
+ * mode ({@code -Dlatency.mode=low}) busy-spins the trade consumers and, where the
+ * transport supports it, the I/O event loops, and pins I/O threads round-robin to
+ * the {@code io} CPU set and trade consumers to the {@code consumer} set, so they
+ * never migrate between cores and keep their caches warm.
+ *
+ * <pre>
+ * -Dlatency.mode=low  -Daffinity.io=1-3  -Daffinity.consumer=4,5
+ * </pre>
+ *
+ * Without explicit sets, low-latency mode leaves CPU 0 to the OS and interrupts,
+ * gives the last CPU to the consumers and the ones in between to I/O. Each
+ * busy-spinning thread keeps a core 100% busy, so the consumer set needs one
+ * CPU per trade ring: the Netty and JDK clients have one ring, and the Vert.x
+ * client defaults to one instance, each with its own ring, per consumer CPU.
+ * A busy-spinning consumer that has to share a CPU is reported on startup.
+ */
+public class ThreadAffinity {
+
+    private static final ThreadAffinity SYSTEM = parse();
+
+    private final int[] ioCpus;
+    private final int[] consumerCpus;
+    private final boolean busySpin;
+    private final AtomicInteger nextIo = new AtomicInteger();
+    private final AtomicInteger nextConsumer = new AtomicInteger();
+
+    public ThreadAffinity(int[] ioCpus, int[] consumerCpus, boolean busySpin) {
+        this.ioCpus = ioCpus;
+        this.consumerCpus = consumerCpus;
+        this.busySpin = busySpin;
+    }
+
+    /** No pinning and parking consumers. */
+    public static ThreadAffinity none() {
+        return new ThreadAffinity(new int[0], new int[0], false);
+    }
+
+    /** The process-wide settings, shared so that every client component draws from the same CPU sets. */
+    public static ThreadAffinity fromSystemProperties() {
+        return SYSTEM;
+    }
+
+    private static ThreadAffinity parse() {
+        boolean low = "low".equals(System.getProperty("latency.mode", "default").toLowerCase(Locale.ROOT));
+        int cpus = Runtime.getRuntime().availableProcessors();
+        boolean split = low && cpus >= 3;
+        int[] io = cpus(System.getProperty("affinity.io", split ? "1-" + (cpus - 2) : ""));
+        int[] consumer = cpus(System.getProperty("affinity.consumer", split ? String.valueOf(cpus - 1) : ""));
+        return new ThreadAffinity(io, consumer, low);
+    }
+
+    /** Parses a CPU list such as {@code 1-3,6}. */
+    static int[] cpus(String list) {
+        List<Integer> cpus = new ArrayList<>();
+        for (String part : list.split(",")) {
+            part = part.trim();
+            if (part.isEmpty()) {
+                continue;
+            }
+            int dash = part.indexOf('-');
+            int from = Integer.parseInt(dash < 0 ? part : part.substring(0, dash));
+            int to = dash < 0 ? from : Integer.parseInt(part.substring(dash + 1));
+            for (int cpu = from; cpu <= to; cpu++) {
+                cpus.add(cpu);
+            }
+        }
+        return cpus.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public boolean busySpin() {
+        return busySpin;
+    }
+
+    /** How many CPUs trade consumers are pinned to; 0 when they are not pinned. */
+    public int consumerCpuCount() {
+        return consumerCpus.length;
+    }
+
+    /** How trade rings wait for work: spinning in low-latency mode, otherwise backing off to parks. */
+    public TradeRingBuffer.WaitStrategy waitStrategy() {
+        return busySpin ? TradeRingBuffer.WaitStrategy.BUSY_SPIN : TradeRingBuffer.WaitStrategy.SLEEPING;
+    }
+
+    /** Wraps a factory so that each of its threads pins itself to the next I/O CPU when it starts. */
+    public ThreadFactory ioThreads(ThreadFactory delegate) {
+        if (ioCpus.length == 0) {
+            return delegate;
+        }
+        return task -> delegate.newThread(() -> {
+            pinCurrentThreadToIo();
+            task.run();
+        });
+    }
+
+    /** A factory for a trade ring's consumer thread, pinned to the next consumer CPU. */
+    public ThreadFactory consumerThread(String name) {
+        return task -> new Thread(() -> {
+            if (consumerCpus.length > 0) {
+                int n = nextConsumer.getAndIncrement();
+                int cpu = consumerCpus[Math.floorMod(n, consumerCpus.length)];
+                if (busySpin && n >= consumerCpus.length) {
+                    System.err.println("Busy-spinning " + name + " shares CPU " + cpu + " with another trade consumer;"
+                            + " give -Daffinity.consumer one CPU per trade ring");
+                }
+                pin(cpu);
+            }
+            task.run();
+        }, name);
+    }
+
+    /** Pins the calling thread, such as a Vert.x event loop, to the next I/O CPU. */
+    public void pinCurrentThreadToIo() {
+        if (ioCpus.length > 0) {
+            pin(ioCpus[Math.floorMod(nextIo.getAndIncrement(), ioCpus.length)]);
+        }
+    }
+
+    private static void pin(int cpu) {
+        try {
+            Affinity.setAffinity(cpu);
+            System.out.println("Pinned " + Thread.currentThread().getName() + " to CPU " + cpu);
+        } catch (RuntimeException | LinkageError e) {
+            // Pinning is an optimisation; an unsupported OS or a CPU outside the cgroup must not stop the client.
+            System.err.println("Could not pin " + Thread.currentThread().getName() + " to CPU " + cpu + ": " + e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (!busySpin && ioCpus.length == 0 && consumerCpus.length == 0) {
+            return "default (no pinning, parking consumers)";
+        }
+        return (busySpin ? "low latency" : "pinned") + " (I/O CPUs " + describe(ioCpus)
+                + ", consumer CPUs " + describe(consumerCpus) + (busySpin ? ", busy-spin" : "") + ")";
+    }
+
+    private static String describe(int[] cpus) {
+        return cpus.length == 0 ? "any" : Arrays.toString(cpus);
+    }
+}
@@ -0,0 +1,43 @@
+package com.mexc;
+
+/**
+ * A single decoded trade. Instances are mutable and reused by the decoders, so
+ * a handler that needs to keep one beyond the callback must {@link #copy()} it.
+ */
+public class Trade {
+
+    public static final byte BUY = 1;
+    public static final byte SELL = 2;
+
+    public int symbolId;
+    public double price;
+    public double quantity;
+    public byte side;
+    public long timestamp;
+    /** {@link System#nanoTime()} at which the frame carrying this trade started decoding. */
+    public long receivedNanos;
+
+    public Trade set(Trade other) {
+        this.symbolId = other.symbolId;
+        this.price = other.price;
+        this.quantity = other.quantity;
+        this.side = other.side;
+        this.timestamp = other.timestamp;
+        this.receivedNanos = other.receivedNanos;
+        return this;
+    }
+
+    public Trade copy() {
+        return new Trade().set(this);
+    }
+
+    public boolean isBuy() {
+        return side == BUY;
+    }
+
+    @Override
+    public String toString() {
+        return "Trade{symbolId=" + symbolId + ", price=" + price + ", quantity=" + quantity
+                + ", side=" + (side == BUY ? "BUY" : "SELL") + ", timestamp=" + timestamp + '}';
+    }
+}
@@ -0,0 +1,137 @@
+package com.mexc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges the copies of a symbol's trades that arrive over redundant
+ * connections, so whichever copy comes first is passed downstream and the
+ * others are dropped. It sits in front of the other stages on the trade ring's
+ * consumer thread, for the symbols marked with {@link #arbitrate}; every other
+ * symbol passes straight through.
+ *
+ * <p>A trade is identified by its exchange time, price, quantity and side.
+ * Each arbitrated symbol keeps a ring of the last {@code window} trades it
+ * passed, which are in time order, so a new trade is only compared with the
+ * remembered trades of its own millisecond. A trade older than the newest one
+ * passed is dropped too: it is either a copy that fell out of the window or a
+ * trade one connection missed, and passing it would break time order. Two
+ * genuinely identical trades in the same millisecond are indistinguishable and
+ * come out once.
+ *
+ * <pre>
+ * -Dmexc.redundant=BTCUSDT,ETHUSDT  -Darbiter.window=64
+ * </pre>
+ */
+public class TradeArbiter implements TradeHandler {
+
+    public static final int DEFAULT_WINDOW = 64;
+
+    private final TradeHandler downstream;
+    private final int window;
+    private final List<String> symbols = new ArrayList<>();
+    // Per symbol, null unless arbitrated: ring of passed trades' fingerprints and times.
+    private final long[][] fingerprints;
+    private final long[][] times;
+    private final int[] next;
+    private final int[] filled;
+    private volatile long duplicates;
+    private volatile long late;
+
+    public TradeArbiter(int symbols, int window, TradeHandler downstream) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be positive: " + window);
+        }
+        this.downstream = downstream;
+        this.window = window;
+        this.fingerprints = new long[symbols][];
+        this.times = new long[symbols][];
+        this.next = new int[symbols];
+        this.filled = new int[symbols];
+    }
+
+    /**
+     * The arbiter for the {@code -Dmexc.redundant} symbols the registry knows, in
+     * front of {@code downstream}, or null when no symbol is redundant.
+     */
+    public static TradeArbiter fromSystemProperties(SymbolRegistry registry, TradeHandler downstream) {
+        String redundant = System.getProperty("mexc.redundant", "");
+        TradeArbiter arbiter = new TradeArbiter(registry.capacity(),
+                Integer.getInteger("arbiter.window", DEFAULT_WINDOW), downstream);
+        for (String symbol : redundant.split(",")) {
+            int id = registry.idOf(symbol.trim());
+            if (id >= 0) {
+                arbiter.arbitrate(id);
+                arbiter.symbols.add(registry.name(id));
+            } else if (!symbol.isBlank()) {
+                System.err.println("Ignoring unknown redundant symbol " + symbol);
+            }
+        }
+        return arbiter.symbols.isEmpty() ? null : arbiter;
+    }
+
+    /** Starts merging copies for the symbol. Call before trades for it arrive. */
+    public void arbitrate(int symbolId) {
+        if (fingerprints[symbolId] == null) {
+            fingerprints[symbolId] = new long[window];
+            times[symbolId] = new long[window];
+        }
+    }
+
+    /** The symbols set up by {@link #fromSystemProperties}, to be subscribed on a second connection. */
+    public List<String> symbols() {
+        return symbols;
+    }
+
+    @Override
+    public void onTrade(Trade trade) {
+        int id = trade.symbolId;
+        long[] seen = fingerprints[id];
+        if (seen == null) {
+            downstream.onTrade(trade);
+            return;
+        }
+        long[] at = times[id];
+        long fingerprint = fingerprint(trade);
+        long time = trade.timestamp;
+        int count = filled[id];
+        int newest = (next[id] + window - 1) % window;
+        if (count > 0 && time <= at[newest]) {
+            for (int i = 0, slot = newest; i < count && at[slot] >= time; i++, slot = (slot + window - 1) % window) {
+                if (at[slot] == time && seen[slot] == fingerprint) {
+                    duplicates++;
+                    return;
+                }
+            }
+            if (time < at[newest]) {
+                late++;
+                return;
+            }
+        }
+        int slot = next[id];
+        seen[slot] = fingerprint;
+        at[slot] = time;
+        next[id] = (slot + 1) % window;
+        if (count < window) {
+            filled[id] = count + 1;
+        }
+        downstream.onTrade(trade);
+    }
+
+    private static long fingerprint(Trade trade) {
+        long h = Double.doubleToLongBits(trade.price) * 0x9E3779B97F4A7C15L;
+        h = (h ^ Double.doubleToLongBits(trade.quantity)) * 0xC2B2AE3D27D4EB4FL;
+        h = (h ^ trade.side) * 0x165667B19E3779F9L;
+        return h ^ (h >>> 29);
+    }
+
+    /** Copies dropped because an identical trade had already been passed. */
+    public long duplicates() {
+        return duplicates;
+    }
+
+    /** Trades dropped because they were older than one already passed. */
+    public long late() {
+        return late;
+    }
+}
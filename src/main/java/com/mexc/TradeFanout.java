@@ -0,0 +1,319 @@
+package com.mexc;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Fans decoded trades out to {@link TradeListener}s, each registered for a
+ * symbol or a glob such as {@code BTC*} or {@code *USDT}.
+ *
+ * <p>As a stage on the trade ring's consumer thread it only copies each trade
+ * into the queue of every matching subscription. Each subscription drains its
+ * own bounded queue on its own thread, so a slow listener falls behind on its
+ * own while the socket threads keep publishing. What happens when its queue
+ * is full is the subscription's {@link Policy}. The stage may be shared by
+ * several trade rings, as the Vert.x instances do.
+ */
+public class TradeFanout implements TradeHandler {
+
+    public enum Policy {
+        /** Never lose a trade: the fan-out waits for room, holding up every subscription behind it. */
+        BLOCK,
+        /** Discard the oldest queued trade to make room for the new one. */
+        DROP_OLDEST,
+        /** Keep only the latest undelivered trade per symbol; the queue can never overflow. */
+        CONFLATE
+    }
+
+    private final SymbolRegistry registry;
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    public TradeFanout(SymbolRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Starts delivering trades for the matching symbols to the listener on a new
+     * thread. {@code capacity} bounds the queue for BLOCK and DROP_OLDEST; a
+     * conflating queue holds at most one trade per symbol.
+     */
+    public Subscription subscribe(String symbolOrGlob, TradeListener listener, Policy policy, int capacity) {
+        Pattern pattern = glob(symbolOrGlob);
+        Subscription subscription = policy == Policy.CONFLATE
+                ? new ConflatingSubscription(symbolOrGlob, listener, pattern)
+                : new BoundedSubscription(symbolOrGlob, listener, pattern, policy, capacity);
+        subscriptions.add(subscription);
+        subscription.thread.start();
+        return subscription;
+    }
+
+    private static Pattern glob(String symbolOrGlob) {
+        StringBuilder regex = new StringBuilder();
+        for (String literal : symbolOrGlob.split("(?=[*?])|(?<=[*?])")) {
+            if (literal.equals("*")) {
+                regex.append(".*");
+            } else if (literal.equals("?")) {
+                regex.append('.');
+            } else if (!literal.isEmpty()) {
+                regex.append(Pattern.quote(literal));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    @Override
+    public void onTrade(Trade trade) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.matches(trade.symbolId)) {
+                subscription.offer(trade);
+            }
+        }
+    }
+
+    public int subscriptionCount() {
+        return subscriptions.size();
+    }
+
+    /** A registered listener with its queue and delivery thread. */
+    public abstract class Subscription implements AutoCloseable {
+        // Trades handed to the listener per lock acquisition.
+        static final int BATCH = 64;
+
+        private static final byte UNKNOWN = 0;
+        private static final byte MATCH = 1;
+        private static final byte NO_MATCH = 2;
+
+        final Pattern pattern;
+        // Resolved on first sight of each id, so symbols listed later are matched too.
+        final byte[] matches = new byte[registry.capacity()];
+        final TradeListener listener;
+        final Thread thread;
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition notEmpty = lock.newCondition();
+        final Trade[] batch = new Trade[BATCH];
+        // Guarded by lock.
+        long skipped;
+        private volatile long skippedTotal;
+        private volatile long delivered;
+        private volatile boolean closed;
+
+        Subscription(String symbolOrGlob, TradeListener listener, Pattern pattern) {
+            this.pattern = pattern;
+            this.listener = listener;
+            for (int i = 0; i < BATCH; i++) {
+                batch[i] = new Trade();
+            }
+            this.thread = new Thread(this::run, "mexc-subscriber-" + symbolOrGlob);
+            this.thread.setDaemon(true);
+        }
+
+        boolean matches(int symbolId) {
+            byte match = matches[symbolId];
+            if (match == UNKNOWN) {
+                match = pattern.matcher(registry.name(symbolId)).matches() ? MATCH : NO_MATCH;
+                matches[symbolId] = match;
+            }
+            return match == MATCH;
+        }
+
+        /** Queues a copy of the trade; called by the fan-out stage. */
+        abstract void offer(Trade trade);
+
+        /** Moves up to {@link #BATCH} queued trades into {@link #batch}; called with the lock held. */
+        abstract int take();
+
+        abstract int queued();
+
+        private void run() {
+            while (!closed) {
+                int count;
+                long skippedNow;
+                lock.lock();
+                try {
+                    while (queued() == 0 && !closed) {
+                        notEmpty.await(100, TimeUnit.MILLISECONDS);
+                    }
+                    count = take();
+                    skippedNow = skipped;
+                    skipped = 0;
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    lock.unlock();
+                }
+                try {
+                    if (skippedNow > 0) {
+                        skippedTotal += skippedNow;
+                        listener.onSkipped(skippedNow);
+                    }
+                    for (int i = 0; i < count; i++) {
+                        listener.onTrade(batch[i]);
+                    }
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+                delivered += count;
+            }
+        }
+
+        public long delivered() {
+            return delivered;
+        }
+
+        /** Trades discarded or conflated so far, as reported through {@link TradeListener#onSkipped}. */
+        public long skipped() {
+            return skippedTotal;
+        }
+
+        public int depth() {
+            lock.lock();
+            try {
+                return queued();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            subscriptions.remove(this);
+            closed = true;
+            lock.lock();
+            try {
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+    }
+
+    /** A ring of pre-allocated trades for the BLOCK and DROP_OLDEST policies. */
+    private final class BoundedSubscription extends Subscription {
+        private final Trade[] slots;
+        private final Policy policy;
+        private final Condition notFull = lock.newCondition();
+        private long head;
+        private long tail;
+
+        BoundedSubscription(String symbolOrGlob, TradeListener listener, Pattern pattern, Policy policy, int capacity) {
+            super(symbolOrGlob, listener, pattern);
+            if (capacity < 1) {
+                throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+            }
+            this.policy = policy;
+            this.slots = new Trade[capacity];
+            for (int i = 0; i < capacity; i++) {
+                slots[i] = new Trade();
+            }
+        }
+
+        @Override
+        void offer(Trade trade) {
+            lock.lock();
+            try {
+                while (tail - head == slots.length) {
+                    if (policy == Policy.DROP_OLDEST || isClosed()) {
+                        head++;
+                        skipped++;
+                    } else {
+                        notFull.awaitUninterruptibly();
+                    }
+                }
+                slots[(int) (tail++ % slots.length)].set(trade);
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        int take() {
+            int count = (int) Math.min(BATCH, tail - head);
+            for (int i = 0; i < count; i++) {
+                batch[i].set(slots[(int) (head++ % slots.length)]);
+            }
+            if (count > 0) {
+                notFull.signal();
+            }
+            return count;
+        }
+
+        @Override
+        int queued() {
+            return (int) (tail - head);
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            lock.lock();
+            try {
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** The latest undelivered trade per symbol, delivered in the order symbols first became pending. */
+    private final class ConflatingSubscription extends Subscription {
+        private final Trade[] latest;
+        private final boolean[] pending;
+        private final int[] order;
+        private int head;
+        private int size;
+
+        ConflatingSubscription(String symbolOrGlob, TradeListener listener, Pattern pattern) {
+            super(symbolOrGlob, listener, pattern);
+            this.latest = new Trade[registry.capacity()];
+            this.pending = new boolean[registry.capacity()];
+            this.order = new int[registry.capacity()];
+        }
+
+        @Override
+        void offer(Trade trade) {
+            int id = trade.symbolId;
+            lock.lock();
+            try {
+                if (latest[id] == null) {
+                    latest[id] = new Trade();
+                }
+                if (pending[id]) {
+                    skipped++;
+                } else {
+                    pending[id] = true;
+                    order[(head + size++) % order.length] = id;
+                    notEmpty.signal();
+                }
+                latest[id].set(trade);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        int take() {
+            int count = Math.min(BATCH, size);
+            for (int i = 0; i < count; i++) {
+                int id = order[head];
+                head = (head + 1) % order.length;
+                pending[id] = false;
+                batch[i].set(latest[id]);
+            }
+            size -= count;
+            return count;
+        }
+
+        @Override
+        int queued() {
+            return size;
+        }
+    }
+}
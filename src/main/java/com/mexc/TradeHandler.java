@@ -0,0 +1,23 @@
+package com.mexc;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+public interface TradeHandler {
+
+    /**
+     * Called once per decoded trade. The trade is only valid for the duration
+     * of the call.
+     */
+    void onTrade(Trade trade);
+
+    /** Runs each handler in turn, on the calling thread. Null handlers (disabled optional stages) are left out. */
+    static TradeHandler chain(TradeHandler... handlers) {
+        TradeHandler[] stages = Arrays.stream(handlers).filter(Objects::nonNull).toArray(TradeHandler[]::new);
+        return trade -> {
+            for (TradeHandler stage : stages) {
+                stage.onTrade(trade);
+            }
+        };
+    }
+}
@@ -0,0 +1,327 @@
+package com.mexc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Append-only journal of decoded trades in memory-mapped files, one per UTC
+ * hour of exchange time. Each trade is a fixed 32-byte little-endian record:
+ *
+ * <pre>
+ * timestamp:long  price:double  quantity:double  symbolId:int  side:byte  pad:3
+ * </pre>
+ *
+ * Alongside each {@code trades-yyyyMMdd-HH.dat} the journal keeps a
+ * {@code .idx} sparse index with the min and max timestamp of every block of
+ * {@value #BLOCK_RECORDS} records, which lets replay skip blocks outside the
+ * requested range, and a {@code .symbols} file naming the ids used in that hour.
+ *
+ * <p>It is a {@link TradeHandler} meant to run as a stage on the trade ring's
+ * consumer thread, so the socket threads never touch the disk. Writes only
+ * touch the mapping; the OS flushes pages in the background.
+ */
+public class TradeJournal implements TradeHandler, AutoCloseable {
+
+    static final int RECORD_SIZE = 32;
+    static final int BLOCK_RECORDS = 1024;
+    static final int INDEX_ENTRY_SIZE = 16;
+    private static final long CHUNK_SIZE = 64L << 20;
+    private static final long HOUR_MILLIS = 3_600_000L;
+    static final String DATA_SUFFIX = ".dat";
+    static final String INDEX_SUFFIX = ".idx";
+    private static final DateTimeFormatter HOUR_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HH").withZone(ZoneOffset.UTC);
+
+    private final Path directory;
+    private final SymbolRegistry registry;
+    private final ByteBuffer indexEntry = ByteBuffer.allocateDirect(INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    private long hour = Long.MIN_VALUE;
+    private FileChannel data;
+    private FileChannel index;
+    private Path symbolsFile;
+    private int symbolsWritten;
+    private MappedByteBuffer chunk;
+    private long chunkBase;
+    private long records;
+    private long blockMin;
+    private long blockMax;
+    private boolean closed;
+
+    public TradeJournal(Path directory, SymbolRegistry registry) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.registry = registry;
+    }
+
+    /** Opens a journal in {@code -Djournal.dir}, or returns null if it is not set. */
+    public static TradeJournal fromSystemProperties(SymbolRegistry registry) throws IOException {
+        String dir = System.getProperty("journal.dir");
+        if (dir == null) {
+            return null;
+        }
+        TradeJournal journal = new TradeJournal(Paths.get(dir), registry);
+        Runtime.getRuntime().addShutdownHook(new Thread(journal::close));
+        System.out.println("Journaling trades to " + journal.directory.toAbsolutePath());
+        return journal;
+    }
+
+    @Override
+    public synchronized void onTrade(Trade trade) {
+        if (closed) {
+            return;
+        }
+        try {
+            long tradeHour = Math.floorDiv(trade.timestamp, HOUR_MILLIS);
+            // A late trade from the previous hour stays in the current file; replay filters by timestamp.
+            if (tradeHour > hour) {
+                roll(tradeHour);
+            }
+            if (trade.symbolId >= symbolsWritten) {
+                appendListedSymbols();
+            }
+            if (!chunk.hasRemaining()) {
+                mapChunk(chunkBase + CHUNK_SIZE);
+            }
+            chunk.putLong(trade.timestamp)
+                    .putDouble(trade.price)
+                    .putDouble(trade.quantity)
+                    .putInt(trade.symbolId)
+                    .put(trade.side)
+                    .put((byte) 0).put((byte) 0).put((byte) 0);
+            recorded(trade.timestamp);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void recorded(long timestamp) throws IOException {
+        blockMin = Math.min(blockMin, timestamp);
+        blockMax = Math.max(blockMax, timestamp);
+        if (++records % BLOCK_RECORDS == 0) {
+            writeIndexEntry();
+        }
+    }
+
+    private void roll(long newHour) throws IOException {
+        closeFiles();
+        hour = newHour;
+        List<String> names = registry.names();
+        String base = "trades-" + HOUR_FORMAT.format(Instant.ofEpochMilli(newHour * HOUR_MILLIS));
+        Path symbols = directory.resolve(base + ".symbols");
+        if (Files.exists(symbols) && !Files.readAllLines(symbols, StandardCharsets.US_ASCII).equals(names)) {
+            // Ids from a different listing cannot share a file, so this run gets its own.
+            base = base + "-" + System.currentTimeMillis();
+            symbols = directory.resolve(base + ".symbols");
+        }
+        Files.write(symbols, names, StandardCharsets.US_ASCII);
+        symbolsFile = symbols;
+        symbolsWritten = names.size();
+        data = FileChannel.open(directory.resolve(base + DATA_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(directory.resolve(base + INDEX_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        // Resume after the last fully indexed block and rescan whatever was written after it,
+        // which after a crash may end in zeroed, never-written records.
+        long written = data.size() / RECORD_SIZE;
+        records = Math.min(index.size() / INDEX_ENTRY_SIZE, written / BLOCK_RECORDS) * BLOCK_RECORDS;
+        index.truncate(records / BLOCK_RECORDS * INDEX_ENTRY_SIZE);
+        blockMin = Long.MAX_VALUE;
+        blockMax = Long.MIN_VALUE;
+        mapChunk(records * RECORD_SIZE / CHUNK_SIZE * CHUNK_SIZE);
+        chunk.position((int) (records * RECORD_SIZE - chunkBase));
+        while (records < written) {
+            if (!chunk.hasRemaining()) {
+                mapChunk(chunkBase + CHUNK_SIZE);
+            }
+            long timestamp = chunk.getLong(chunk.position());
+            if (timestamp == 0) {
+                break;
+            }
+            chunk.position(chunk.position() + RECORD_SIZE);
+            recorded(timestamp);
+        }
+    }
+
+    /** Symbols listed since the hour's file was opened get the next ids, so they are appended to its names. */
+    private void appendListedSymbols() throws IOException {
+        List<String> names = registry.names();
+        Files.write(symbolsFile, names.subList(symbolsWritten, names.size()), StandardCharsets.US_ASCII,
+                StandardOpenOption.APPEND);
+        symbolsWritten = names.size();
+    }
+
+    private void mapChunk(long base) throws IOException {
+        chunkBase = base;
+        chunk = data.map(FileChannel.MapMode.READ_WRITE, base, CHUNK_SIZE);
+        chunk.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void writeIndexEntry() throws IOException {
+        long block = (records - 1) / BLOCK_RECORDS;
+        indexEntry.clear();
+        indexEntry.putLong(blockMin).putLong(blockMax).flip();
+        index.write(indexEntry, block * INDEX_ENTRY_SIZE);
+        blockMin = Long.MAX_VALUE;
+        blockMax = Long.MIN_VALUE;
+    }
+
+    private void closeFiles() throws IOException {
+        if (data == null) {
+            return;
+        }
+        if (records % BLOCK_RECORDS != 0) {
+            // Index the partial last block too, so replay never has to scan unindexed data.
+            writeIndexEntry();
+        }
+        chunk = null;
+        data.truncate(records * RECORD_SIZE);
+        data.close();
+        index.close();
+        data = null;
+        index = null;
+        hour = Long.MIN_VALUE;
+    }
+
+    /**
+     * Streams every journaled trade with {@code fromMillis <= timestamp <= toMillis}
+     * to the handler, file by file in journal order, as fast as the disk allows.
+     * Symbol ids are translated into {@code registry}; trades for symbols it does
+     * not list are skipped. Returns the number of trades delivered.
+     */
+    public static long replay(Path directory, long fromMillis, long toMillis, SymbolRegistry registry,
+                              TradeHandler handler) throws IOException {
+        // A late trade is written to the file that was open when it arrived, so look one hour past the range.
+        String first = "trades-" + HOUR_FORMAT.format(Instant.ofEpochMilli(fromMillis));
+        String last = "trades-" + HOUR_FORMAT.format(Instant.ofEpochMilli(toMillis + HOUR_MILLIS));
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "trades-*" + DATA_SUFFIX)) {
+            for (Path file : stream) {
+                String hourName = file.getFileName().toString().substring(0, first.length());
+                if (hourName.compareTo(first) >= 0 && hourName.compareTo(last) <= 0) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+
+        Trade trade = new Trade();
+        long delivered = 0;
+        for (Path file : files) {
+            String base = file.getFileName().toString();
+            base = base.substring(0, base.length() - DATA_SUFFIX.length());
+            delivered += replayFile(directory, base, fromMillis, toMillis, registry, handler, trade);
+        }
+        return delivered;
+    }
+
+    /**
+     * Replays a journal directory into a state table and reports the read rate:
+     * {@code TradeJournal <dir> [fromIso] [toIso]}, e.g. {@code 2026-10-17T13:00:00Z}.
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(args[0]);
+        long from = args.length > 1 ? Instant.parse(args[1]).toEpochMilli() : 0;
+        long to = args.length > 2 ? Instant.parse(args[2]).toEpochMilli() : System.currentTimeMillis();
+
+        Set<String> names = new LinkedHashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "trades-*.symbols")) {
+            for (Path file : stream) {
+                names.addAll(Files.readAllLines(file, StandardCharsets.US_ASCII));
+            }
+        }
+        SymbolRegistry registry = new SymbolRegistry(new ArrayList<>(names));
+        SymbolStateTable state = new SymbolStateTable(registry.size());
+        long start = System.nanoTime();
+        long trades = replay(directory, from, to, registry, state);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Replayed %d trades in %.3f s (%.0f trades/s, %.1f MB/s)%n",
+                trades, seconds, trades / seconds, trades * (double) RECORD_SIZE / seconds / (1 << 20));
+    }
+
+    private static long replayFile(Path directory, String base, long fromMillis, long toMillis,
+                                   SymbolRegistry registry, TradeHandler handler, Trade trade) throws IOException {
+        List<String> names = Files.readAllLines(directory.resolve(base + ".symbols"), StandardCharsets.US_ASCII);
+        int[] ids = new int[names.size()];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = registry.idOf(names.get(id));
+        }
+        byte[] indexBytes = Files.readAllBytes(directory.resolve(base + INDEX_SUFFIX));
+        ByteBuffer blocks = ByteBuffer.wrap(indexBytes).order(ByteOrder.LITTLE_ENDIAN);
+        int indexed = indexBytes.length / INDEX_ENTRY_SIZE;
+
+        long delivered = 0;
+        try (FileChannel data = FileChannel.open(directory.resolve(base + DATA_SUFFIX), StandardOpenOption.READ)) {
+            long total = data.size() / RECORD_SIZE;
+            MappedByteBuffer chunk = null;
+            long chunkBase = 0;
+            for (long block = 0; block * BLOCK_RECORDS < total; block++) {
+                // Blocks the writer has not indexed yet (a live or crashed file) are always scanned.
+                if (block < indexed) {
+                    long min = blocks.getLong((int) block * INDEX_ENTRY_SIZE);
+                    long max = blocks.getLong((int) block * INDEX_ENTRY_SIZE + 8);
+                    if (max < fromMillis || min > toMillis) {
+                        continue;
+                    }
+                }
+                long end = Math.min(total, (block + 1) * BLOCK_RECORDS);
+                trade.receivedNanos = System.nanoTime();
+                for (long record = block * BLOCK_RECORDS; record < end; record++) {
+                    long offset = record * RECORD_SIZE;
+                    if (chunk == null || offset < chunkBase || offset >= chunkBase + CHUNK_SIZE) {
+                        chunkBase = offset / CHUNK_SIZE * CHUNK_SIZE;
+                        chunk = data.map(FileChannel.MapMode.READ_ONLY, chunkBase,
+                                Math.min(CHUNK_SIZE, data.size() - chunkBase));
+                        chunk.order(ByteOrder.LITTLE_ENDIAN);
+                    }
+                    int at = (int) (offset - chunkBase);
+                    long timestamp = chunk.getLong(at);
+                    if (timestamp == 0) {
+                        return delivered;
+                    }
+                    int symbolId = chunk.getInt(at + 24);
+                    if (timestamp < fromMillis || timestamp > toMillis
+                            || symbolId < 0 || symbolId >= ids.length || ids[symbolId] < 0) {
+                        continue;
+                    }
+                    trade.timestamp = timestamp;
+                    trade.price = chunk.getDouble(at + 8);
+                    trade.quantity = chunk.getDouble(at + 16);
+                    trade.symbolId = ids[symbolId];
+                    trade.side = chunk.get(at + 28);
+                    handler.onTrade(trade);
+                    delivered++;
+                }
+            }
+        }
+        return delivered;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        try {
+            closeFiles();
+        } catch (IOException e) {
+            System.err.println("Failed to close journal: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.mexc;
+
+/**
+ * A consumer of the trade feed registered through {@link TradeFanout#subscribe}.
+ * Both callbacks run on the subscription's own thread, never on an I/O thread.
+ */
+public interface TradeListener {
+
+    /** Called once per delivered trade. The trade is only valid for the duration of the call. */
+    void onTrade(Trade trade);
+
+    /**
+     * Called before the next delivery when trades were discarded or conflated
+     * because this listener fell behind.
+     */
+    default void onSkipped(long trades) {
+    }
+}
@@ -0,0 +1,186 @@
+package com.mexc;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded multi-producer, single-consumer ring of pre-allocated {@link Trade}
+ * slots between the socket handlers and downstream stages. Producers claim a
+ * sequence with a CAS and copy the trade into its slot; the consumer thread
+ * drains published slots in order. Publishing is O(1) and never allocates.
+ */
+public class TradeRingBuffer {
+
+    public enum OverflowPolicy {
+        /** Spin until the consumer frees a slot. Stalls the producing I/O thread while the ring is full. */
+        BLOCK,
+        /** Discard the new trade and count it in {@link #droppedCount()}. */
+        DROP
+    }
+
+    public enum WaitStrategy {
+        /** Lowest latency; burns a core while idle. */
+        BUSY_SPIN {
+            @Override
+            int idle(int counter) {
+                Thread.onSpinWait();
+                return counter + 1;
+            }
+        },
+        YIELDING {
+            @Override
+            int idle(int counter) {
+                if (counter < 100) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+                return counter + 1;
+            }
+        },
+        /** Backs off to short parks; the cheapest on CPU at the cost of up to ~100us latency. */
+        SLEEPING {
+            @Override
+            int idle(int counter) {
+                if (counter < 100) {
+                    Thread.onSpinWait();
+                } else if (counter < 200) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(100_000);
+                }
+                return counter + 1;
+            }
+        };
+
+        abstract int idle(int counter);
+    }
+
+    private final Trade[] slots;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final OverflowPolicy overflowPolicy;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean running;
+    private Thread consumerThread;
+
+    public TradeRingBuffer(int capacity, WaitStrategy waitStrategy, OverflowPolicy overflowPolicy) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.slots = new Trade[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Trade();
+            published.set(i, -1);
+        }
+        this.mask = capacity - 1;
+        this.waitStrategy = waitStrategy;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Copies the trade into the next free slot. Returns false if the ring was
+     * full and the trade was dropped.
+     */
+    public boolean publish(Trade trade) {
+        long sequence;
+        int spins = 0;
+        while (true) {
+            sequence = claimed.get();
+            if (sequence - consumed.get() >= slots.length) {
+                if (overflowPolicy == OverflowPolicy.DROP) {
+                    dropped.increment();
+                    return false;
+                }
+                spins = WaitStrategy.YIELDING.idle(spins);
+                continue;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        int index = (int) sequence & mask;
+        slots[index].set(trade);
+        published.lazySet(index, sequence);
+        return true;
+    }
+
+    /**
+     * Hands every trade published so far to the handler, in sequence order, and
+     * returns how many were delivered. Must only be called from one thread.
+     */
+    public int drain(TradeHandler handler) {
+        long next = consumed.get();
+        int count = 0;
+        while (published.get((int) next & mask) == next) {
+            handler.onTrade(slots[(int) next & mask]);
+            next++;
+            count++;
+            // Release slots in small batches so blocked producers are not starved.
+            if ((count & 63) == 0) {
+                consumed.lazySet(next);
+            }
+        }
+        if (count > 0) {
+            consumed.lazySet(next);
+        }
+        return count;
+    }
+
+    public void start(TradeHandler handler, String threadName) {
+        start(handler, task -> new Thread(task, threadName));
+    }
+
+    /** Starts the consumer on a thread from the factory, such as {@link ThreadAffinity#consumerThread}. */
+    public synchronized void start(TradeHandler handler, ThreadFactory threadFactory) {
+        if (consumerThread != null) {
+            throw new IllegalStateException("Consumer already started");
+        }
+        running = true;
+        consumerThread = threadFactory.newThread(() -> {
+            int idle = 0;
+            while (running) {
+                if (drain(handler) > 0) {
+                    idle = 0;
+                } else {
+                    idle = waitStrategy.idle(idle);
+                }
+            }
+        });
+        consumerThread.setDaemon(true);
+        consumerThread.start();
+    }
+
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        if (consumerThread != null) {
+            consumerThread.join();
+            consumerThread = null;
+        }
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /** Trades claimed by producers but not yet consumed. */
+    public long depth() {
+        return Math.max(0, claimed.get() - consumed.get());
+    }
+
+    public long consumedCount() {
+        return consumed.get();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+}
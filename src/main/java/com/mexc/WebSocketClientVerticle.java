@@ -1,124 +1,437 @@
 package com.mexc;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.http.HttpClient;
 import io.vertx.core.http.HttpClientOptions;
 import io.vertx.core.http.WebSocket;
 import io.vertx.core.http.WebSocketConnectOptions;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.WebClient;
 
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-
-import com.fasterxml.jackson.databind.JsonNode;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * Vert.x client. {@link #main} deploys one instance per core; each instance runs on
+ * its own event loop and owns every {@code instances}-th connection of the shard
+ * plan together with its own trade ring, state table and balancer, so instances
+ * share nothing on the receive path. They merge only through the shared
+ * {@link FeedMetrics} counters and the thread-safe journal and fan-out stages.
+ * Deployed with the no-arg constructor, an instance discovers the symbols itself
+ * and owns its metrics, journal and fan-out.
+ */
 public class WebSocketClientVerticle extends AbstractVerticle {
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private final List<JsonObject> messages = new ArrayList<>();
+    private final ThreadAffinity affinity = ThreadAffinity.fromSystemProperties();
+    final TradeRingBuffer trades = new TradeRingBuffer(
+            1 << 16, affinity.waitStrategy(), TradeRingBuffer.OverflowPolicy.DROP);
+    private final ReconnectPolicy reconnectPolicy = ReconnectPolicy.defaults();
+    private final Liveness liveness = Liveness.fromSystemProperties();
+    private final GapTracker gaps = new GapTracker();
+    private HttpClient httpClient;
+    private URI wsUri;
+    private DealsFormat format;
+    private volatile boolean stopped;
+    private final boolean shared;
+    private SymbolRegistry registry;
+    private SymbolStateTable state;
+    private BarAggregator bars;
+    private FeedMetrics metrics;
+    private TradeJournal journal;
+    private TradeFanout fanout;
+    private int instance;
+    private int instances;
+    private ShardPlanner planner;
+    private ShardBalancer balancer;
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    // Second connections for redundant symbols, kept out of the balancer.
+    private final List<Connection> redundantConnections = new ArrayList<>();
 
-    @Override
-    public void start() throws Exception {
-        // Fetch currency pairs
-        List<String> symbols = getCurrencyPairs();
-        System.out.println("Total number of symbols in mexc: " + symbols.size());
+    public WebSocketClientVerticle() {
+        this.shared = false;
+    }
 
-        int nSymbols = 100;
-        int batch = 15;
+    /** An instance of a multi-instance deployment; the registry, metrics, (nullable) journal and fan-out are shared. */
+    public WebSocketClientVerticle(SymbolRegistry registry, FeedMetrics metrics, TradeJournal journal,
+                                   TradeFanout fanout) {
+        this.shared = true;
+        this.registry = registry;
+        this.metrics = metrics;
+        this.journal = journal;
+        this.fanout = fanout;
+    }
 
-        for (int i = 0; i < nSymbols; i += batch) {
-            List<String> curSymbols = symbols.subList(i, Math.min(i + batch, symbols.size()));
-            startTradeThread(curSymbols);
-        }
+    @Override
+    public void start(Promise<Void> startPromise) throws Exception {
+        wsUri = new URI(config().getString("wsUrl", MexcEndpoints.webSocket().toString()));
+        format = DealsFormat.valueOf(config().getString("format", DealsFormat.fromSystemProperties().name()));
+        instance = config().getInteger("instance", 0);
+        instances = config().getInteger("instances", 1);
+        // start() runs on this instance's event loop, which serves all of its sockets.
+        affinity.pinCurrentThreadToIo();
+        httpClient = vertx.createHttpClient(new HttpClientOptions()
+                .setSsl("wss".equalsIgnoreCase(wsUri.getScheme()))
+                .setTrustAll(true));
 
-        startMonitorThread();
-    }
+        symbols().onFailure(startPromise::fail).onSuccess(symbols -> {
+            try {
+                if (!shared) {
+                    System.out.println("Total number of symbols in mexc: " + symbols.size());
+                    registry = SymbolDiscovery.newRegistry(symbols);
+                    metrics = new FeedMetrics("vertx", registry);
+                    MetricsHttpServer.expose(metrics);
+                    journal = TradeJournal.fromSystemProperties(registry);
+                    fanout = new TradeFanout(registry);
+                }
+                state = new SymbolStateTable(registry.capacity());
+                bars = new BarAggregator(registry.capacity());
+                metrics.bind(trades, state);
 
-    private List<String> getCurrencyPairs() throws Exception {
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(new URI("https://api.mexc.com/api/v3/ticker/bookTicker"))
-                .build();
+                planner = ShardPlanner.defaults();
+                List<List<String>> shards = planner.plan(symbols);
+                for (int i = instance; i < shards.size(); i += instances) {
+                    Connection connection = new Connection(shards.get(i), metrics.newConnection());
+                    connections.add(connection);
+                    connect(connection, 0);
+                }
+                System.out.println("Instance " + instance + " subscribing over " + connections.size()
+                        + " of " + shards.size() + " connections");
 
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-        JsonNode rootNode = objectMapper.readTree(response.body());
+                startMonitorThread();
+                balancer = new ShardBalancer(planner, connections, registry, state, 6, 20);
+                vertx.setPeriodic(10_000, id -> balancer.run());
+                startPromise.complete();
+            } catch (Exception e) {
+                startPromise.fail(e);
+            }
+        });
+    }
 
-        List<String> symbols = new ArrayList<>();
-        for (JsonNode node : rootNode) {
-            symbols.add(node.get("symbol").asText());
+    /** The symbols to subscribe: the shared registry's, the deployment config's, or discovered over REST. */
+    private Future<List<String>> symbols() {
+        if (shared) {
+            return Future.succeededFuture(registry.names());
         }
-        return symbols;
+        JsonArray configured = config().getJsonArray("symbols");
+        if (configured != null) {
+            List<String> symbols = new ArrayList<>();
+            configured.forEach(symbol -> symbols.add((String) symbol));
+            return Future.succeededFuture(symbols);
+        }
+        return fetchCurrencyPairs(vertx);
     }
 
-    private void startTradeThread(List<String> symbols) {
-        vertx.executeBlocking(promise -> {
-            HttpClientOptions clientOptions = new HttpClientOptions().setSsl(true).setTrustAll(true);
+    /** Fetches the currency pairs with the non-blocking {@link WebClient}, so no event loop blocks on discovery. */
+    public static Future<List<String>> fetchCurrencyPairs(Vertx vertx) {
+        WebClient client = WebClient.create(vertx);
+        return client.getAbs(MexcEndpoints.bookTicker().toString())
+                .send()
+                .map(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("Failed to get currency pairs: HTTP error code : "
+                                + response.statusCode());
+                    }
+                    JsonArray body = response.bodyAsJsonArray();
+                    List<String> symbols = new ArrayList<>(body.size());
+                    for (int i = 0; i < body.size(); i++) {
+                        symbols.add(body.getJsonObject(i).getString("symbol"));
+                    }
+                    return symbols;
+                })
+                .onComplete(ar -> client.close());
+    }
 
-            WebSocketConnectOptions wsOptions = new WebSocketConnectOptions()
-                    .setHost("wbs.mexc.com")
-                    .setPort(443)
-                    .setURI("/ws");
+    /**
+     * Applies a change in the listing on this instance's event loop. Listings are
+     * split across instances by symbol hash and fill free slots first; the rest
+     * get new connections. Call after the symbols are registered.
+     */
+    public void symbolsChanged(List<String> listed, List<String> delisted) {
+        context.runOnContext(v -> {
+            if (balancer == null) {
+                // Still starting; its shard plan is built from the registry, which already has them.
+                return;
+            }
+            List<String> mine = new ArrayList<>();
+            for (String symbol : listed) {
+                if (Math.floorMod(symbol.hashCode(), instances) == instance) {
+                    mine.add(symbol);
+                }
+            }
+            for (List<String> overflow : planner.plan(balancer.listed(mine))) {
+                Connection connection = new Connection(overflow, metrics.newConnection());
+                connections.add(connection);
+                connect(connection, 0);
+            }
+            balancer.delisted(delisted);
+            ShardBalancer.unsubscribe(redundantConnections, delisted);
+        });
+    }
 
-            vertx.createHttpClient(clientOptions).webSocket(wsOptions, res -> {
-                if (res.succeeded()) {
-                    WebSocket webSocket = res.result();
-                    System.out.println("WebSocket connected for symbols: " + symbols);
+    private void connect(Connection connection, int attempt) {
+        List<String> symbols = connection.symbols;
+        boolean ssl = "wss".equalsIgnoreCase(wsUri.getScheme());
+        WebSocketConnectOptions wsOptions = new WebSocketConnectOptions()
+                .setHost(wsUri.getHost())
+                .setPort(wsUri.getPort() != -1 ? wsUri.getPort() : ssl ? 443 : 80)
+                .setSsl(ssl)
+                .setURI(wsUri.getRawPath());
 
-                    String[] args = symbols.stream()
-                            .map(symbol -> "spot@public.deals.v3.api@" + symbol)
-                            .toArray(String[]::new);
+        httpClient.webSocket(wsOptions, res -> {
+            if (res.succeeded()) {
+                WebSocket webSocket = res.result();
+                System.out.println("WebSocket connected for symbols: " + symbols);
+                if (connection.connectedBefore) {
+                    connection.metrics.reconnected();
+                }
+                connection.connectedBefore = true;
 
-                    Map<String, Object> messageMap = new HashMap<>();
-                    messageMap.put("method", "SUBSCRIPTION");
-                    messageMap.put("params", args);
+                connection.webSocket = webSocket;
+                send(webSocket, "SUBSCRIPTION", symbols);
+                gaps.resubscribed(symbols);
+                Liveness.Tracker tracker = liveness.newTracker(connection.metrics);
+                long livenessTimer = vertx.setPeriodic(Liveness.TICK_MILLIS,
+                        id -> checkLiveness(connection, webSocket, tracker));
 
-                    try {
-                        String subscriptionMessage = objectMapper.writeValueAsString(messageMap);
-                        webSocket.writeTextMessage(subscriptionMessage);
-                    } catch (JsonProcessingException e) {
-                        e.printStackTrace();
+                DealsDecoder decoder = new DealsDecoder(registry);
+                ProtobufDealsDecoder protobufDecoder = new ProtobufDealsDecoder(registry);
+                TradeHandler sink = trades::publish;
+                // Continuation frames carry the type of the message they continue.
+                boolean[] binaryMessage = new boolean[1];
+                webSocket.frameHandler(frame -> {
+                    if (!frame.isText() && !frame.isBinary() && !frame.isContinuation()) {
+                        return;
                     }
+                    if (!frame.isContinuation()) {
+                        binaryMessage[0] = frame.isBinary();
+                    }
+                    if (connection.webSocket != webSocket) {
+                        // Declared dead and replaced; whatever it still delivers would be duplicates.
+                        return;
+                    }
+                    ByteBuf content = frame.binaryData().getByteBuf();
+                    long start = System.nanoTime();
+                    tracker.frameReceived(start);
+                    if (binaryMessage[0]) {
+                        connection.metrics.messageReceived(content.readableBytes());
+                        protobufDecoder.decode(content, sink);
+                    } else if (ControlFrames.isReply(content)) {
+                        // PONGs and acks never reach the decoder or the message counts.
+                        if (ControlFrames.isPong(content)) {
+                            tracker.pongReceived(start);
+                        }
+                        return;
+                    } else {
+                        connection.metrics.messageReceived(content.readableBytes());
+                        decoder.decode(content, sink);
+                    }
+                    metrics.recordDecode(System.nanoTime() - start);
+                });
 
-                    webSocket.handler(message -> {
-                        JsonObject jsonMessage = new JsonObject(message.toString());
-                        messages.add(jsonMessage);
-                        System.out.println("New message: " + jsonMessage);
-                    });
-
-                    webSocket.closeHandler(v -> {
-                        System.out.println("WebSocket closed for symbols: " + symbols);
-                    });
+                webSocket.exceptionHandler(e -> {
+                    System.err.println("WebSocket error for symbols " + symbols + ": " + e.getMessage());
+                    webSocket.close();
+                });
 
-                } else {
-                    System.err.println("Failed to connect WebSocket: " + res.cause().getMessage());
-                }
-            });
+                webSocket.closeHandler(v -> {
+                    vertx.cancelTimer(livenessTimer);
+                    System.out.println("WebSocket closed for symbols: " + symbols);
+                    if (connection.webSocket == webSocket) {
+                        disconnected(connection);
+                    }
+                });
 
-            promise.complete();
-        }, false, res -> {
-            if (res.failed()) {
-                System.err.println("Failed to start trade thread: " + res.cause().getMessage());
+            } else {
+                System.err.println("Failed to connect WebSocket: " + res.cause().getMessage());
+                gaps.disconnected(symbols);
+                scheduleReconnect(connection, attempt);
             }
         });
     }
 
+    /** Pings only while the socket is read-idle and replaces it after consecutive missed PONGs. */
+    private void checkLiveness(Connection connection, WebSocket webSocket, Liveness.Tracker tracker) {
+        if (connection.webSocket != webSocket) {
+            return;
+        }
+        switch (tracker.tick(System.nanoTime())) {
+            case PING:
+                webSocket.writeTextMessage(ControlFrames.PING);
+                break;
+            case DEAD:
+                System.out.println("No PONG after " + tracker.missedPongs() + " PINGs, dropping connection for "
+                        + connection.symbols.size() + " symbols");
+                // Reconnect now rather than after the close handshake times out on the stalled socket.
+                disconnected(connection);
+                webSocket.close();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void disconnected(Connection connection) {
+        connection.webSocket = null;
+        gaps.disconnected(connection.symbols);
+        scheduleReconnect(connection, 0);
+    }
+
+    private void send(WebSocket webSocket, String method, List<String> symbols) {
+        for (String message : ControlFrames.subscriptions(method, registry.dealsChannels(symbols, format))) {
+            webSocket.writeTextMessage(message);
+        }
+    }
+
+    private void scheduleReconnect(Connection connection, int attempt) {
+        if (stopped) {
+            return;
+        }
+        long delay = reconnectPolicy.nextDelayMillis(attempt);
+        System.out.println("Reconnecting " + connection.symbols.size() + " symbols in " + delay + " ms");
+        vertx.setTimer(delay, id -> connect(connection, attempt + 1));
+    }
+
     private void startMonitorThread() {
-        vertx.setPeriodic(5000, id -> {
-            System.out.println("Number of messages: " + messages.size());
-            messages.clear();
-        });
+        TradeHandler pipeline = TradeHandler.chain(downstream(), metrics.lagRecorder(), journal, fanout);
+        TradeArbiter arbiter = TradeArbiter.fromSystemProperties(registry, pipeline);
+        if (arbiter != null) {
+            subscribeTwice(arbiter.symbols());
+            metrics.bind(arbiter);
+            pipeline = arbiter;
+        }
+        trades.start(pipeline, affinity.consumerThread("mexc-trades-" + instance));
+        if (!shared) {
+            vertx.setPeriodic(5000, id -> System.out.println(metrics.summary()));
+        }
+    }
+
+    /**
+     * Opens second connections for the redundant symbols this instance carries, so
+     * both copies meet in its own arbiter. They stay out of rebalancing.
+     */
+    private void subscribeTwice(List<String> redundant) {
+        List<String> mine = new ArrayList<>();
+        for (String symbol : redundant) {
+            for (Connection connection : connections) {
+                if (connection.symbols.contains(symbol)) {
+                    mine.add(symbol);
+                    break;
+                }
+            }
+        }
+        for (List<String> shard : planner.plan(mine)) {
+            Connection connection = new Connection(shard, metrics.newConnection());
+            redundantConnections.add(connection);
+            connect(connection, 0);
+        }
+    }
+
+    /** The stage fed by the trade ring's consumer thread. */
+    TradeHandler downstream() {
+        return TradeHandler.chain(state, bars);
+    }
+
+    /** Where listeners subscribe to this instance's trades; shared by every instance when deployed by {@link #main}. */
+    public TradeFanout fanout() {
+        return fanout;
     }
 
-    public static void main(String[] args) {
-        Vertx vertx = Vertx.vertx();
-        vertx.deployVerticle(new WebSocketClientVerticle());
+    /** This instance's bars, covering the symbols on its connections. */
+    public BarAggregator bars() {
+        return bars;
+    }
+
+    @Override
+    public void stop() throws Exception {
+        stopped = true;
+        trades.stop();
+        if (journal != null && !shared) {
+            journal.close();
+        }
+    }
+
+    /** One logical connection; its symbol list is resubscribed on every reconnect. */
+    private class Connection implements Shard {
+        final List<String> symbols;
+        final ConnectionMetrics metrics;
+        volatile WebSocket webSocket;
+        // Retries before the first handshake are not reconnects.
+        boolean connectedBefore;
+
+        Connection(List<String> symbols, ConnectionMetrics metrics) {
+            this.symbols = new CopyOnWriteArrayList<>(symbols);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public List<String> symbols() {
+            return symbols;
+        }
+
+        @Override
+        public void subscribe(List<String> added) {
+            symbols.addAll(added);
+            WebSocket current = webSocket;
+            if (current != null) {
+                send(current, "SUBSCRIPTION", added);
+            }
+        }
+
+        @Override
+        public void unsubscribe(List<String> removed) {
+            symbols.removeAll(removed);
+            WebSocket current = webSocket;
+            if (current != null) {
+                send(current, "UNSUBSCRIPTION", removed);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ThreadAffinity affinity = ThreadAffinity.fromSystemProperties();
+        // Each instance runs its own trade consumer, which spins in low-latency mode and needs a CPU of its own.
+        int instances = Integer.getInteger("vertx.instances", affinity.busySpin()
+                ? Math.max(1, affinity.consumerCpuCount()) : Runtime.getRuntime().availableProcessors());
+        // Discovery blocks, so it runs here rather than on an event loop.
+        SymbolDiscovery discovery = SymbolDiscovery.fromSystemProperties();
+        List<String> symbols = discovery.symbols();
+        System.out.println("Total number of symbols in mexc: " + symbols.size());
+        SymbolRegistry registry = SymbolDiscovery.newRegistry(symbols);
+        FeedMetrics metrics = new FeedMetrics("vertx", registry);
+        MetricsHttpServer.expose(metrics);
+        TradeJournal journal = TradeJournal.fromSystemProperties(registry);
+        TradeFanout fanout = new TradeFanout(registry);
+
+        // Native transport (epoll) keeps the event loops off the JDK selector when tuning for latency.
+        Vertx vertx = Vertx.vertx(new VertxOptions().setPreferNativeTransport(affinity.busySpin()));
+        Runtime.getRuntime().addShutdownHook(new Thread(vertx::close));
+        System.out.println("Subscribing " + symbols.size() + " symbols over "
+                + ShardPlanner.defaults().connectionsFor(symbols.size()) + " connections on " + instances + " instances");
+        List<WebSocketClientVerticle> verticles = new ArrayList<>(instances);
+        for (int i = 0; i < instances; i++) {
+            WebSocketClientVerticle verticle = new WebSocketClientVerticle(registry, metrics, journal, fanout);
+            verticles.add(verticle);
+            JsonObject config = new JsonObject().put("instance", i).put("instances", instances);
+            vertx.deployVerticle(verticle, new DeploymentOptions().setConfig(config))
+                    .onFailure(Throwable::printStackTrace);
+        }
+        discovery.startPolling((listed, delisted) -> {
+            for (String symbol : listed) {
+                registry.register(symbol);
+            }
+            for (WebSocketClientVerticle verticle : verticles) {
+                verticle.symbolsChanged(listed, delisted);
+            }
+        });
+        vertx.setPeriodic(5000, id -> System.out.println(metrics.summary()));
     }
 }